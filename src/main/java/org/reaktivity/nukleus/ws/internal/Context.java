@@ -16,8 +16,10 @@
 package org.reaktivity.nukleus.ws.internal;
 
 import static java.lang.String.format;
+import static org.agrona.BitUtil.findNextPositivePowerOfTwo;
 import static org.agrona.CloseHelper.quietClose;
 import static org.agrona.LangUtil.rethrowUnchecked;
+import static org.reaktivity.nukleus.ws.internal.routable.Target.DATA_LENGTH_MAXIMUM;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -42,6 +44,28 @@ public final class Context implements Closeable
 {
     private static final String MEMORY_FOR_REPEAT_REQUESTS = "nukleus.ws.memory.for.repeat.requests";
     private static final String MAXIMUM_REQUEST_SIZE = "nukleus.ws.maximum.request.size";
+    private static final String MAXIMUM_CORRELATIONS = "nukleus.ws.maximum.correlations";
+    private static final String HANDSHAKE_TIMEOUT = "nukleus.ws.handshake.timeout";
+    private static final String REASSEMBLE_FRAGMENTS = "nukleus.ws.reassemble.fragments";
+    private static final String MEMORY_FOR_REASSEMBLY = "nukleus.ws.memory.for.reassembly";
+    private static final String MAXIMUM_MESSAGE_SIZE = "nukleus.ws.maximum.message.size";
+    private static final String KEEPALIVE_INTERVAL = "nukleus.ws.keepalive.interval";
+    private static final String KEEPALIVE_TIMEOUT = "nukleus.ws.keepalive.timeout";
+    private static final String VALIDATE_UTF8 = "nukleus.ws.validate.utf8";
+    private static final String SLAB_SLOT_CAPACITIES = "nukleus.ws.slab.slot.capacities";
+    private static final String SLAB_CLASS_MEMORY = "nukleus.ws.slab.class.memory";
+    private static final String SLAB_OVERFLOW_CAPACITY = "nukleus.ws.slab.overflow.capacity";
+    private static final String SLAB_OVERFLOW_PAGE_SIZE = "nukleus.ws.slab.overflow.page.size";
+    private static final String MEMORY_FOR_PENDING_REPLIES = "nukleus.ws.memory.for.pending.replies";
+
+    private static final int MAXIMUM_CORRELATIONS_DEFAULT = 1 << 16;
+    private static final long HANDSHAKE_TIMEOUT_DEFAULT = 30000L;
+    private static final int MAXIMUM_MESSAGE_SIZE_DEFAULT = 1 << 15;
+    private static final long KEEPALIVE_INTERVAL_DEFAULT = 0L;
+    private static final long KEEPALIVE_TIMEOUT_DEFAULT = 10000L;
+    private static final int[] SLAB_SLOT_CAPACITIES_DEFAULT = { 256, 4096, 65536 };
+    private static final int SLAB_OVERFLOW_CAPACITY_DEFAULT = 0;
+    private static final int SLAB_OVERFLOW_PAGE_SIZE_DEFAULT = 256;
 
     private final ControlLayout.Builder controlRW = new ControlLayout.Builder();
 
@@ -64,11 +88,25 @@ public final class Context implements Closeable
     private WatchService watchService;
 
     private Path streamsPath;
+    private Path overflowPath;
 
     private int maximumControlResponseLength;
 
     public int memoryForRepeatRequests;
     public int maximumRequestSize;
+    public int maximumCorrelations;
+    public long handshakeTimeoutMillis;
+    public boolean reassembleFragments;
+    public int memoryForReassembly;
+    public int maximumMessageSize;
+    public long keepaliveIntervalMillis;
+    public long keepaliveTimeoutMillis;
+    public boolean validateUtf8;
+    public int[] slabSlotCapacities;
+    public int[] slabClassMemory;
+    public int slabOverflowCapacity;
+    public int slabOverflowPageSize;
+    public int[] pendingSlabClassMemory;
 
     public Context readonly(
         boolean readonly)
@@ -132,6 +170,18 @@ public final class Context implements Closeable
         return streamsPath;
     }
 
+    public Context overflowPath(
+        Path overflowPath)
+    {
+        this.overflowPath = overflowPath;
+        return this;
+    }
+
+    public Path overflowPath()
+    {
+        return overflowPath;
+    }
+
     public Context sourceStreamsPath(
         Function<String, Path> sourceStreamsFile)
     {
@@ -271,9 +321,54 @@ public final class Context implements Closeable
 
             this.maximumRequestSize = Integer.getInteger(MAXIMUM_REQUEST_SIZE, streamsBufferCapacity / 8);
 
+            this.maximumCorrelations = findNextPositivePowerOfTwo(
+                    Integer.getInteger(MAXIMUM_CORRELATIONS, MAXIMUM_CORRELATIONS_DEFAULT));
+
+            this.handshakeTimeoutMillis = Long.getLong(HANDSHAKE_TIMEOUT, HANDSHAKE_TIMEOUT_DEFAULT);
+
+            this.reassembleFragments = Boolean.getBoolean(REASSEMBLE_FRAGMENTS);
+
+            this.memoryForReassembly = Integer.getInteger(MEMORY_FOR_REASSEMBLY, streamsBufferCapacity);
+
+            // reassembled messages are delivered in a single frame, otherwise frames are forwarded in chunks
+            this.maximumMessageSize = Integer.getInteger(MAXIMUM_MESSAGE_SIZE, reassembleFragments ?
+                    Math.min(MAXIMUM_MESSAGE_SIZE_DEFAULT, maxMessageLength() / 2) : Integer.MAX_VALUE);
+
+            // so a reassembled message always fits one frame to the application, whatever was configured
+            if (reassembleFragments && maximumMessageSize > maxMessageLength() - DATA_LENGTH_MAXIMUM)
+            {
+                logger().warning(format("%s clamped to %d to fit the streams buffer", MAXIMUM_MESSAGE_SIZE,
+                        maxMessageLength() - DATA_LENGTH_MAXIMUM));
+                this.maximumMessageSize = maxMessageLength() - DATA_LENGTH_MAXIMUM;
+            }
+
+            // zero disables keepalive pings
+            this.keepaliveIntervalMillis = Long.getLong(KEEPALIVE_INTERVAL, KEEPALIVE_INTERVAL_DEFAULT);
+
+            this.keepaliveTimeoutMillis = Long.getLong(KEEPALIVE_TIMEOUT, KEEPALIVE_TIMEOUT_DEFAULT);
+
+            this.validateUtf8 = Boolean.getBoolean(VALIDATE_UTF8);
+
+            // size classes up to the maximum request size, sharing the memory for repeat requests equally by default
+            this.slabSlotCapacities = getIntegers(SLAB_SLOT_CAPACITIES, defaultSlabSlotCapacities(maximumRequestSize));
+
+            this.slabClassMemory = getIntegers(SLAB_CLASS_MEMORY,
+                    defaultSlabClassMemory(memoryForRepeatRequests, slabSlotCapacities.length));
+
+            // zero disables spilling to the memory-mapped overflow file once the slab is full
+            this.slabOverflowCapacity = Integer.getInteger(SLAB_OVERFLOW_CAPACITY, SLAB_OVERFLOW_CAPACITY_DEFAULT);
+
+            this.slabOverflowPageSize = Integer.getInteger(SLAB_OVERFLOW_PAGE_SIZE, SLAB_OVERFLOW_PAGE_SIZE_DEFAULT);
+
+            // messages to clients awaiting http credit have their own memory, in the same size classes, so slow
+            // readers cannot starve the buffering of inbound frames
+            this.pendingSlabClassMemory = defaultSlabClassMemory(
+                    Integer.getInteger(MEMORY_FOR_PENDING_REPLIES, streamsBufferCapacity), slabSlotCapacities.length);
+
             // default FileSystem cannot be closed
             watchService(FileSystems.getDefault().newWatchService());
             streamsPath(configDirectory.resolve("ws/streams"));
+            overflowPath(configDirectory.resolve("ws/overflow"));
 
             sourceStreamsPath(source -> configDirectory.resolve(format("ws/streams/%s", source)));
 
@@ -310,6 +405,53 @@ public final class Context implements Closeable
         quietClose(controlRO);
     }
 
+    private static int[] getIntegers(
+        String name,
+        int[] defaultValues)
+    {
+        final String value = System.getProperty(name);
+
+        if (value == null)
+        {
+            return defaultValues;
+        }
+
+        final String[] items = value.split(",");
+        final int[] values = new int[items.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            values[i] = Integer.parseInt(items[i].trim());
+        }
+        return values;
+    }
+
+    private static int[] defaultSlabSlotCapacities(
+        int maximumRequestSize)
+    {
+        int classes = 0;
+        while (classes < SLAB_SLOT_CAPACITIES_DEFAULT.length && SLAB_SLOT_CAPACITIES_DEFAULT[classes] < maximumRequestSize)
+        {
+            classes++;
+        }
+
+        final int[] slotCapacities = new int[classes + 1];
+        System.arraycopy(SLAB_SLOT_CAPACITIES_DEFAULT, 0, slotCapacities, 0, classes);
+        slotCapacities[classes] = maximumRequestSize;
+        return slotCapacities;
+    }
+
+    private static int[] defaultSlabClassMemory(
+        int memory,
+        int classes)
+    {
+        final int[] classMemory = new int[classes];
+        for (int i = 0; i < classes; i++)
+        {
+            classMemory[i] = memory / classes;
+        }
+        return classMemory;
+    }
+
     private void concludeCounters()
     {
         if (countersManager == null)
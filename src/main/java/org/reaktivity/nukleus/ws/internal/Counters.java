@@ -15,18 +15,32 @@
  */
 package org.reaktivity.nukleus.ws.internal;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.agrona.concurrent.status.AtomicCounter;
 import org.agrona.concurrent.status.CountersManager;
 
 public final class Counters implements AutoCloseable
 {
+    private final CountersManager countersManager;
+    private final Map<String, AtomicCounter> countersByName;
     private final AtomicCounter routesSourced;
     private final AtomicCounter streamsSourced;
+    private final AtomicCounter correlationsActive;
+    private final AtomicCounter correlationsOverflow;
+    private final AtomicCounter handshakesExpired;
 
     Counters(CountersManager countersManager)
     {
+        this.countersManager = countersManager;
+        this.countersByName = new HashMap<>();
+
         routesSourced = countersManager.newCounter("routesSourced");
         streamsSourced = countersManager.newCounter("streamsSourced");
+        correlationsActive = countersManager.newCounter("correlationsActive");
+        correlationsOverflow = countersManager.newCounter("correlationsOverflow");
+        handshakesExpired = countersManager.newCounter("handshakesExpired");
     }
 
     @Override
@@ -34,6 +48,14 @@ public final class Counters implements AutoCloseable
     {
         routesSourced.close();
         streamsSourced.close();
+        correlationsActive.close();
+        correlationsOverflow.close();
+        handshakesExpired.close();
+
+        for (AtomicCounter counter : countersByName.values())
+        {
+            counter.close();
+        }
     }
 
     public AtomicCounter routesSourced()
@@ -45,4 +67,45 @@ public final class Counters implements AutoCloseable
     {
         return streamsSourced;
     }
+
+    public AtomicCounter correlationsActive()
+    {
+        return correlationsActive;
+    }
+
+    public AtomicCounter correlationsOverflow()
+    {
+        return correlationsOverflow;
+    }
+
+    public AtomicCounter handshakesExpired()
+    {
+        return handshakesExpired;
+    }
+
+    /**
+     * Supplies the named counter, allocated on first use and retained until close, for example per route
+     * @param name - the counter label
+     * @return The counter
+     */
+    public AtomicCounter counter(
+        String name)
+    {
+        return countersByName.computeIfAbsent(name, countersManager::newCounter);
+    }
+
+    /**
+     * Closes the named counter, if supplied, so its slot can be reused once its owner, such as a route, is gone
+     * @param name - the counter label
+     */
+    public void release(
+        String name)
+    {
+        final AtomicCounter counter = countersByName.remove(name);
+
+        if (counter != null)
+        {
+            counter.close();
+        }
+    }
 }
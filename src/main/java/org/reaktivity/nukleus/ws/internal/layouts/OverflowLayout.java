@@ -0,0 +1,86 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.layouts;
+
+import static org.agrona.IoUtil.createEmptyFile;
+import static org.agrona.IoUtil.mapExistingFile;
+import static org.agrona.IoUtil.unmap;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * Memory-mapped file used as the overflow tier of a slab, so data spilled from memory is paged out by the
+ * operating system rather than held on the heap
+ */
+public final class OverflowLayout extends Layout
+{
+    private final AtomicBuffer buffer;
+
+    private OverflowLayout(
+        AtomicBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    public AtomicBuffer buffer()
+    {
+        return buffer;
+    }
+
+    @Override
+    public void close()
+    {
+        unmap(buffer.byteBuffer());
+    }
+
+    public static final class Builder extends Layout.Builder<OverflowLayout>
+    {
+        private long capacity;
+        private Path path;
+
+        public Builder capacity(
+            long capacity)
+        {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder path(
+            Path path)
+        {
+            this.path = path;
+            return this;
+        }
+
+        @Override
+        public OverflowLayout build()
+        {
+            final File overflow = path.toFile();
+
+            CloseHelper.close(createEmptyFile(overflow, capacity));
+
+            final MappedByteBuffer mappedOverflow = mapExistingFile(overflow, "overflow", 0, capacity);
+
+            return new OverflowLayout(new UnsafeBuffer(mappedOverflow));
+        }
+    }
+}
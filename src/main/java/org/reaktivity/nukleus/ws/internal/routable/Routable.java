@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.LongFunction;
 import java.util.function.LongSupplier;
 import java.util.function.Predicate;
@@ -37,16 +38,31 @@ import org.agrona.concurrent.MessageHandler;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.reaktivity.nukleus.Nukleus;
 import org.reaktivity.nukleus.ws.internal.Context;
+import org.reaktivity.nukleus.ws.internal.Counters;
 import org.reaktivity.nukleus.ws.internal.conductor.Conductor;
 import org.reaktivity.nukleus.ws.internal.layouts.StreamsLayout;
+import org.reaktivity.nukleus.ws.internal.routable.stream.Keepalives;
+import org.reaktivity.nukleus.ws.internal.routable.stream.ReplyStream;
 import org.reaktivity.nukleus.ws.internal.routable.stream.Slab;
 import org.reaktivity.nukleus.ws.internal.router.Correlation;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
 import org.reaktivity.nukleus.ws.internal.util.function.LongObjectBiConsumer;
 
 public final class Routable extends Nukleus.Composite
 {
     private static final List<Route> EMPTY_ROUTES = emptyList();
 
+    // suffixes of the labels of the counters of each route
+    private static final String PINGS = ".pings";
+    private static final String PONGS = ".pongs";
+    private static final String MESSAGES_TOO_LARGE = ".messages.too.large";
+    private static final String SOURCE_STALLS = ".source.stalls";
+    private static final String SOURCE_OVERRUNS = ".source.overruns";
+
+    private static final Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> GATEWAY_TIMEOUT_HEADERS =
+            hs -> hs.item(h -> h.name(":status").value("504"));
+
     private final Context context;
     private final String sourceName;
     private final Conductor conductor;
@@ -54,11 +70,17 @@ public final class Routable extends Nukleus.Composite
     private final Map<String, Source> sourcesByPartitionName;
     private final Map<String, Target> targetsByName;
     private final Long2ObjectHashMap<List<Route>> routesByRef;
+    private final Long2ObjectHashMap<RouteDispatch> dispatchByRef;
     private final LongObjectBiConsumer<Correlation> correlateNew;
     private final LongFunction<Correlation> correlateEstablished;
     private final LongFunction<Correlation> lookupEstablished;
     private final LongSupplier supplyTargetId;
     private final Slab slab;
+    private final Slab pendingSlab;
+    private final Slab reassemblySlab;
+    private final Long2ObjectHashMap<Consumer<ReplyStream>> replies;
+    private final Long2ObjectHashMap<Runnable> handshakes;
+    private final Keepalives keepalives;
 
     private final Long2ObjectHashMap<MessageHandler> streams;
 
@@ -69,7 +91,12 @@ public final class Routable extends Nukleus.Composite
         LongObjectBiConsumer<Correlation> correlateNew,
         LongFunction<Correlation> correlateEstablished,
         LongFunction<Correlation> lookupEstablished,
-        Slab slab)
+        Slab slab,
+        Slab pendingSlab,
+        Slab reassemblySlab,
+        Long2ObjectHashMap<Consumer<ReplyStream>> replies,
+        Long2ObjectHashMap<Runnable> handshakes,
+        Keepalives keepalives)
     {
         this.context = context;
         this.conductor = conductor;
@@ -81,9 +108,15 @@ public final class Routable extends Nukleus.Composite
         this.sourcesByPartitionName = new HashMap<>();
         this.targetsByName = new HashMap<>();
         this.routesByRef = new Long2ObjectHashMap<>();
+        this.dispatchByRef = new Long2ObjectHashMap<>();
         this.supplyTargetId = context.counters().streamsSourced()::increment;
         this.streams = new Long2ObjectHashMap<>();
         this.slab = slab;
+        this.pendingSlab = pendingSlab;
+        this.reassemblySlab = reassemblySlab;
+        this.replies = replies;
+        this.handshakes = handshakes;
+        this.keepalives = keepalives;
     }
 
     @Override
@@ -108,10 +141,15 @@ public final class Routable extends Nukleus.Composite
         try
         {
             final Target target = supplyTarget(targetName);
-            final Route newRoute = new Route(sourceName, sourceRef, target, targetRef, protocol);
+            final String label = routeLabel(sourceRef, targetName, targetRef, protocol);
+            final Route newRoute = new Route(sourceName, sourceRef, target, targetRef, protocol,
+                    context.counters().counter(label + PINGS), context.counters().counter(label + PONGS),
+                    context.counters().counter(label + MESSAGES_TOO_LARGE),
+                    context.counters().counter(label + SOURCE_STALLS), context.counters().counter(label + SOURCE_OVERRUNS));
 
-            routesByRef.computeIfAbsent(sourceRef, this::newRoutes)
-                       .add(newRoute);
+            final List<Route> newRoutes = new ArrayList<>(supplyRoutes(sourceRef));
+            newRoutes.add(newRoute);
+            updateRoutes(sourceRef, newRoutes);
 
             conductor.onRoutedResponse(correlationId, sourceRef);
         }
@@ -129,7 +167,8 @@ public final class Routable extends Nukleus.Composite
         long targetRef,
         String protocol)
     {
-        final List<Route> routes = supplyRoutes(sourceRef);
+        final List<Route> oldRoutes = supplyRoutes(sourceRef);
+        final List<Route> newRoutes = new ArrayList<>(oldRoutes);
 
         final Predicate<Route> filter =
                 sourceMatches(sourceName)
@@ -138,8 +177,13 @@ public final class Routable extends Nukleus.Composite
                  .and(targetRefMatches(targetRef))
                  .and(protocolMatches(protocol));
 
-        if (routes.removeIf(filter))
+        if (newRoutes.removeIf(filter))
         {
+            updateRoutes(sourceRef, newRoutes);
+
+            // streams still open on a removed route keep counting, but into counters no longer reported
+            oldRoutes.stream().filter(filter).forEach(this::releaseCounters);
+
             conductor.onUnroutedResponse(correlationId);
         }
         else
@@ -148,10 +192,57 @@ public final class Routable extends Nukleus.Composite
         }
     }
 
-    private List<Route> newRoutes(
-        long sourceRef)
+    private void releaseCounters(
+        Route route)
     {
-        return new ArrayList<>();
+        final String label = routeLabel(route.sourceRef(), route.target().name(), route.targetRef(), route.protocol());
+        final Counters counters = context.counters();
+
+        counters.release(label + PINGS);
+        counters.release(label + PONGS);
+        counters.release(label + MESSAGES_TOO_LARGE);
+        counters.release(label + SOURCE_STALLS);
+        counters.release(label + SOURCE_OVERRUNS);
+    }
+
+    private String routeLabel(
+        long sourceRef,
+        String targetName,
+        long targetRef,
+        String protocol)
+    {
+        return String.format("%s.%d.%s.%d.%s", sourceName, sourceRef, targetName, targetRef, protocol);
+    }
+
+    /**
+     * Replies to a handshake from this source that was not answered in time
+     * @param correlationId - correlation id of the handshake request stream
+     */
+    public void doExpireHandshake(
+        long correlationId)
+    {
+        final Target replyTo = supplyTarget(sourceName);
+        final long newReplyId = supplyTargetId.getAsLong();
+
+        replyTo.doHttpBegin(newReplyId, 0L, correlationId, GATEWAY_TIMEOUT_HEADERS);
+        replyTo.doHttpEnd(newReplyId);
+    }
+
+    private void updateRoutes(
+        long sourceRef,
+        List<Route> newRoutes)
+    {
+        // copy-on-write, so streams never observe routes or dispatch mid-update
+        if (newRoutes.isEmpty())
+        {
+            routesByRef.remove(sourceRef);
+            dispatchByRef.remove(sourceRef);
+        }
+        else
+        {
+            routesByRef.put(sourceRef, newRoutes);
+            dispatchByRef.put(sourceRef, new RouteDispatch(newRoutes));
+        }
     }
 
     private List<Route> supplyRoutes(
@@ -160,6 +251,13 @@ public final class Routable extends Nukleus.Composite
         return routesByRef.getOrDefault(referenceId, EMPTY_ROUTES);
     }
 
+    private RouteDispatch supplyDispatch(
+        long referenceId)
+    {
+        final RouteDispatch dispatch = dispatchByRef.get(referenceId);
+        return dispatch != null ? dispatch : RouteDispatch.EMPTY;
+    }
+
     private Source newSource(
         String partitionName)
     {
@@ -171,8 +269,10 @@ public final class Routable extends Nukleus.Composite
             .build();
 
         return include(new Source(sourceName, partitionName, layout, writeBuffer,
-                                  this::supplyRoutes, supplyTargetId, this::supplyTarget,
-                                  correlateNew, lookupEstablished, correlateEstablished, streams, slab));
+                                  this::supplyRoutes, this::supplyDispatch, supplyTargetId, this::supplyTarget,
+                                  correlateNew, lookupEstablished, correlateEstablished, streams, slab,
+                                  pendingSlab, reassemblySlab, replies, handshakes, keepalives, context.validateUtf8,
+                                  context.maximumMessageSize));
     }
 
     private Target supplyTarget(
@@ -18,6 +18,8 @@ package org.reaktivity.nukleus.ws.internal.routable;
 import java.util.Objects;
 import java.util.function.Predicate;
 
+import org.agrona.concurrent.status.AtomicCounter;
+
 public class Route
 {
     private final String source;
@@ -25,19 +27,34 @@ public class Route
     private final Target target;
     private final long targetRef;
     private final String protocol;
+    private final AtomicCounter pings;
+    private final AtomicCounter pongs;
+    private final AtomicCounter messagesTooLarge;
+    private final AtomicCounter sourceStalls;
+    private final AtomicCounter sourceOverruns;
 
     public Route(
         String source,
         long sourceRef,
         Target target,
         long targetRef,
-        String protocol)
+        String protocol,
+        AtomicCounter pings,
+        AtomicCounter pongs,
+        AtomicCounter messagesTooLarge,
+        AtomicCounter sourceStalls,
+        AtomicCounter sourceOverruns)
     {
         this.source = source;
         this.sourceRef = sourceRef;
         this.target = target;
         this.targetRef = targetRef;
         this.protocol = protocol;
+        this.pings = pings;
+        this.pongs = pongs;
+        this.messagesTooLarge = messagesTooLarge;
+        this.sourceStalls = sourceStalls;
+        this.sourceOverruns = sourceOverruns;
     }
 
     public String source()
@@ -65,6 +82,46 @@ public class Route
         return protocol;
     }
 
+    /**
+     * @return The counter of pings received and answered by this nukleus on streams of this route
+     */
+    public AtomicCounter pings()
+    {
+        return pings;
+    }
+
+    /**
+     * @return The counter of pongs received and consumed by this nukleus on streams of this route
+     */
+    public AtomicCounter pongs()
+    {
+        return pongs;
+    }
+
+    /**
+     * @return The counter of streams of this route closed with 1009 for a message over the maximum message size
+     */
+    public AtomicCounter messagesTooLarge()
+    {
+        return messagesTooLarge;
+    }
+
+    /**
+     * @return The counter of data received on streams of this route that used all of the window granted to the source
+     */
+    public AtomicCounter sourceStalls()
+    {
+        return sourceStalls;
+    }
+
+    /**
+     * @return The counter of data received on streams of this route beyond the window granted to the source
+     */
+    public AtomicCounter sourceOverruns()
+    {
+        return sourceOverruns;
+    }
+
     @Override
     public int hashCode()
     {
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static org.agrona.BitUtil.findNextPositivePowerOfTwo;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * An immutable view of the routes for one source reference, precompiled for handshake dispatch.
+ * Instances are rebuilt whenever the routes change, so lookups never iterate or allocate.
+ * Protocols are held in an open addressed table keyed by their encoded bytes, so they can be
+ * matched directly against the offered protocols in a handshake request.
+ */
+public final class RouteDispatch
+{
+    public static final RouteDispatch EMPTY = new RouteDispatch(emptyList());
+
+    private final byte[][] protocols;
+    private final Route[] protocolRoutes;
+    private final int mask;
+    private final Route defaultRoute;
+    private final Route replyTo;
+
+    public RouteDispatch(
+        List<Route> routes)
+    {
+        Map<String, Route> routesByProtocol = new LinkedHashMap<>();
+        Route anyRoute = null;
+        Route defaultRoute = null;
+
+        for (Route route : routes)
+        {
+            final String protocol = route.protocol();
+            if (protocol != null)
+            {
+                routesByProtocol.putIfAbsent(protocol, route);
+            }
+            else if (defaultRoute == null)
+            {
+                defaultRoute = route;
+            }
+
+            if (anyRoute == null)
+            {
+                anyRoute = route;
+            }
+        }
+
+        final int capacity = findNextPositivePowerOfTwo(Math.max(routesByProtocol.size() * 2, 1));
+        this.protocols = new byte[capacity][];
+        this.protocolRoutes = new Route[capacity];
+        this.mask = capacity - 1;
+
+        for (Map.Entry<String, Route> entry : routesByProtocol.entrySet())
+        {
+            final byte[] protocol = entry.getKey().getBytes(UTF_8);
+            int index = hash(protocol) & mask;
+            while (protocols[index] != null)
+            {
+                index = (index + 1) & mask;
+            }
+            protocols[index] = protocol;
+            protocolRoutes[index] = entry.getValue();
+        }
+
+        this.defaultRoute = defaultRoute;
+        this.replyTo = anyRoute;
+    }
+
+    /**
+     * Gets the route for a protocol offered by the client
+     * @param buffer - buffer containing the encoded protocol
+     * @param offset - offset of the protocol in the buffer
+     * @param length - length of the protocol
+     * @return The first route configured for the protocol, or {@code null} if none
+     */
+    public Route resolve(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        int index = hash(buffer, offset, length) & mask;
+
+        for (byte[] protocol = protocols[index]; protocol != null; protocol = protocols[index])
+        {
+            if (matches(protocol, buffer, offset, length))
+            {
+                return protocolRoutes[index];
+            }
+            index = (index + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the route for a handshake that does not negotiate a protocol
+     * @return The first route without a protocol, or if none, the first route; {@code null} if no routes
+     */
+    public Route defaultRoute()
+    {
+        return defaultRoute != null ? defaultRoute : replyTo;
+    }
+
+    /**
+     * Gets the route for a handshake whose offered protocols do not match any route
+     * @return The first route without a protocol, or {@code null} if none
+     */
+    public Route fallbackRoute()
+    {
+        return defaultRoute;
+    }
+
+    /**
+     * Gets the route used to reply directly to a rejected handshake
+     * @return The first route, or {@code null} if no routes
+     */
+    public Route replyTo()
+    {
+        return replyTo;
+    }
+
+    private static boolean matches(
+        byte[] protocol,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        boolean matches = protocol.length == length;
+
+        for (int i = 0; matches && i < length; i++)
+        {
+            matches = protocol[i] == buffer.getByte(offset + i);
+        }
+
+        return matches;
+    }
+
+    private static int hash(
+        byte[] protocol)
+    {
+        int hash = 0;
+        for (int i = 0; i < protocol.length; i++)
+        {
+            hash = 31 * hash + protocol[i];
+        }
+        return mix(hash);
+    }
+
+    private static int hash(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+        {
+            hash = 31 * hash + buffer.getByte(offset + i);
+        }
+        return mix(hash);
+    }
+
+    private static int mix(
+        int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+}
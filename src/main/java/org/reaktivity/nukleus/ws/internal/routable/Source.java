@@ -17,6 +17,7 @@ package org.reaktivity.nukleus.ws.internal.routable;
 
 import java.util.EnumMap;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.LongFunction;
 import java.util.function.LongSupplier;
@@ -29,6 +30,8 @@ import org.agrona.concurrent.MessageHandler;
 import org.agrona.concurrent.ringbuffer.RingBuffer;
 import org.reaktivity.nukleus.Nukleus;
 import org.reaktivity.nukleus.ws.internal.layouts.StreamsLayout;
+import org.reaktivity.nukleus.ws.internal.routable.stream.Keepalives;
+import org.reaktivity.nukleus.ws.internal.routable.stream.ReplyStream;
 import org.reaktivity.nukleus.ws.internal.routable.stream.SourceOutputStreamFactory;
 import org.reaktivity.nukleus.ws.internal.routable.stream.TargetInputEstablishedStreamFactory;
 import org.reaktivity.nukleus.ws.internal.routable.stream.Slab;
@@ -67,13 +70,21 @@ public final class Source implements Nukleus
         StreamsLayout layout,
         AtomicBuffer writeBuffer,
         LongFunction<List<Route>> supplyRoutes,
+        LongFunction<RouteDispatch> supplyDispatch,
         LongSupplier supplyTargetId,
         Function<String, Target> supplyTarget,
         LongObjectBiConsumer<Correlation> correlateNew,
         LongFunction<Correlation> correlateEstablished,
         LongFunction<Correlation> lookupEstablished,
         Long2ObjectHashMap<MessageHandler> streams,
-        Slab slab)
+        Slab slab,
+        Slab pendingSlab,
+        Slab reassemblySlab,
+        Long2ObjectHashMap<Consumer<ReplyStream>> replies,
+        Long2ObjectHashMap<Runnable> handshakes,
+        Keepalives keepalives,
+        boolean validateUtf8,
+        int maximumMessageSize)
     {
         this.sourceName = sourceName;
         this.partitionName = partitionName;
@@ -86,9 +97,11 @@ public final class Source implements Nukleus
 
         this.streamFactories = new EnumMap<>(RouteKind.class);
         this.streamFactories.put(RouteKind.INPUT,
-                new SourceInputStreamFactory(this, supplyRoutes, supplyTargetId, correlateNew, slab)::newStream);
+                new SourceInputStreamFactory(this, supplyDispatch, supplyTargetId, correlateNew, correlateEstablished,
+                        slab, reassemblySlab, replies, handshakes, keepalives, validateUtf8, maximumMessageSize)::newStream);
         this.streamFactories.put(RouteKind.OUTPUT_ESTABLISHED,
-                new TargetOutputEstablishedStreamFactory(this, supplyTarget, supplyTargetId, correlateEstablished)::newStream);
+                new TargetOutputEstablishedStreamFactory(this, supplyTarget, supplyTargetId, correlateEstablished,
+                        pendingSlab, replies)::newStream);
         this.streamFactories.put(RouteKind.OUTPUT,
                 new SourceOutputStreamFactory(this, supplyRoutes, supplyTargetId, correlateNew)::newStream);
         this.streamFactories.put(RouteKind.INPUT_ESTABLISHED,
@@ -199,11 +212,19 @@ public final class Source implements Nukleus
     public void doWindow(
         final long streamId,
         final int update)
+    {
+        doWindow(streamId, update, update);
+    }
+
+    public void doWindow(
+        final long streamId,
+        final int update,
+        final int frames)
     {
         final WindowFW window = windowRW.wrap(writeBuffer, 0, writeBuffer.capacity())
                 .streamId(streamId)
                 .update(update)
-                .frames(update)
+                .frames(frames)
                 .build();
 
         throttleBuffer.write(window.typeId(), window.buffer(), window.offset(), window.sizeof());
@@ -16,10 +16,15 @@
 package org.reaktivity.nukleus.ws.internal.routable;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static org.agrona.BitUtil.SIZE_OF_BYTE;
-import static org.agrona.BitUtil.SIZE_OF_LONG;
 import static org.reaktivity.nukleus.ws.internal.util.BufferUtil.xor;
-
+import static org.reaktivity.nukleus.ws.internal.util.RingBufferClaim.INSUFFICIENT_CAPACITY;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.UTF8_ACCEPT;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.UTF8_REJECT;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.xorAndValidate;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.function.Consumer;
 
 import org.agrona.DirectBuffer;
@@ -45,11 +50,19 @@ import org.reaktivity.nukleus.ws.internal.types.stream.WsBeginExFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.WsDataExFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.WsEndExFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW;
+import org.reaktivity.nukleus.ws.internal.util.RingBufferClaim;
 
 public final class Target implements Nukleus
 {
     private static final DirectBuffer SOURCE_NAME_BUFFER = new UnsafeBuffer(WsNukleus.NAME.getBytes(UTF_8));
 
+    // encoded lengths of DataFW and EndFW, excluding the payload, with the largest extensions written here
+    public static final int DATA_LENGTH_MAXIMUM = DataFW.FIELD_OFFSET_PAYLOAD + 16;
+    private static final int END_LENGTH_MAXIMUM = EndFW.FIELD_OFFSET_EXTENSION + 16;
+
+    // pending in place of a close status, for an http stream ended without a websocket extension
+    private static final int NO_WS_STATUS = Integer.MIN_VALUE;
+
     private final FrameFW frameRO = new FrameFW();
 
     private final WsFrameFW.Builder wsFrameRW = new WsFrameFW.Builder();
@@ -64,13 +77,52 @@ public final class Target implements Nukleus
 
     private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
 
+    private final Consumer<OctetsFW.Builder> setWsBeginEx = this::setWsBeginEx;
+    private final Flyweight.Builder.Visitor visitWsBeginEx = this::visitWsBeginEx;
+    private DirectBuffer wsBeginProtocol;
+
+    private final Consumer<OctetsFW.Builder> setHttpBeginEx = this::setHttpBeginEx;
+    private Flyweight.Builder.Visitor httpBeginEx;
+
+    private final Consumer<OctetsFW.Builder> setHttpDataPayload = this::setHttpDataPayload;
+    private final Flyweight.Builder.Visitor visitHttpDataPayload = this::visitHttpDataPayload;
+    private OctetsFW httpDataPayload;
+    private int httpDataFlagsAndOpcode;
+
+    private final Consumer<OctetsFW.Builder> setWsDataPayload = this::setWsDataPayload;
+    private final Flyweight.Builder.Visitor visitWsDataPayload = this::visitWsDataPayload;
+    private final Consumer<OctetsFW.Builder> setWsTextPayload = this::setWsTextPayload;
+    private final Flyweight.Builder.Visitor visitWsTextPayload = this::visitWsTextPayload;
+    private final Consumer<OctetsFW.Builder> setWsDataEx = this::setWsDataEx;
+    private final Flyweight.Builder.Visitor visitWsDataEx = this::visitWsDataEx;
+    private DirectBuffer wsDataPayload;
+    private int wsDataMaskKey;
+    private int wsDataFlags;
+
+    private int wsTextUtf8State;
+
+    private final Consumer<OctetsFW.Builder> setWsEndEx = this::setWsEndEx;
+    private final Flyweight.Builder.Visitor visitWsEndEx = this::visitWsEndEx;
+    private final Consumer<OctetsFW.Builder> resetEndEx = e -> e.reset();
+    private int wsEndStatus;
+
+    // ends of streams not yet written while the streams buffer is full, retried in order of arrival
+    private long[] pendingEndIds = new long[8];
+    private int[] pendingEndStatuses = new int[8];
+    private int pendingEnds;
+
+    // writers of http data told once the streams buffer may have room again, retried on each duty cycle
+    private final Deque<Runnable> capacityWaiters = new ArrayDeque<>();
+
     private final String name;
     private final StreamsLayout layout;
     private final AtomicBuffer writeBuffer;
 
     private final RingBuffer streamsBuffer;
+    private final RingBufferClaim streamsClaim;
     private final RingBuffer throttleBuffer;
     private final Long2ObjectHashMap<MessageHandler> throttles;
+    private final int maximumWsDataLength;
 
     public Target(
         String name,
@@ -81,14 +133,19 @@ public final class Target implements Nukleus
         this.layout = layout;
         this.writeBuffer = writeBuffer;
         this.streamsBuffer = layout.streamsBuffer();
+        this.streamsClaim = new RingBufferClaim(streamsBuffer);
         this.throttleBuffer = layout.throttleBuffer();
         this.throttles = new Long2ObjectHashMap<>();
+        this.maximumWsDataLength = streamsBuffer.maxMsgLength() - DATA_LENGTH_MAXIMUM;
     }
 
     @Override
     public int process()
     {
-        return throttleBuffer.read(this::handleRead);
+        // waiters are not counted as work, so a reader that stays behind does not keep the duty cycle spinning
+        notifyCapacityWaiters();
+
+        return throttleBuffer.read(this::handleRead) + flushEnds();
     }
 
     @Override
@@ -140,51 +197,208 @@ public final class Target implements Nukleus
         }
     }
 
+    /**
+     * @return The largest payload that fits in a single WebSocket DATA frame on the target streams buffer
+     */
+    public int maximumWsDataLength()
+    {
+        return maximumWsDataLength;
+    }
+
     public void doWsBegin(
         long targetId,
         long targetRef,
         long correlationId,
-        String protocol)
+        DirectBuffer protocol)
     {
+        this.wsBeginProtocol = protocol;
+
         final BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
                 .streamId(targetId)
                 .source(SOURCE_NAME_BUFFER, 0, SOURCE_NAME_BUFFER.capacity())
                 .sourceRef(targetRef)
                 .correlationId(correlationId)
-                .extension(e -> e.set(visitWsBeginEx(protocol)))
+                .extension(setWsBeginEx)
                 .build();
 
+        this.wsBeginProtocol = null;
+
         streamsBuffer.write(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
     }
 
-    public int doWsData(
+    /**
+     * Writes a frame to the application, unmasking the payload as it is copied
+     * @return {@code true} if written, or {@code false} if the streams buffer is full
+     */
+    public boolean doWsData(
         long targetId,
         int flags,
         int maskKey,
         DirectBuffer payload)
     {
         final int capacity = payload.capacity();
-        final DataFW data = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+        final int index = streamsClaim.claim(DATA_LENGTH_MAXIMUM + capacity);
+
+        if (index == INSUFFICIENT_CAPACITY)
+        {
+            return false;
+        }
+
+        this.wsDataPayload = payload;
+        this.wsDataMaskKey = maskKey;
+        this.wsDataFlags = flags;
+
+        final DataFW data = dataRW.wrap(streamsClaim.buffer(), index, index + DATA_LENGTH_MAXIMUM + capacity)
                 .streamId(targetId)
-                .payload(p -> p.set(payload, 0, capacity).set((b, o, l) -> xor(b, o, o + capacity, maskKey)))
-                .extension(e -> e.set(visitWsDataEx(flags)))
+                .payload(setWsDataPayload)
+                .extension(setWsDataEx)
                 .build();
 
-        streamsBuffer.write(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+        this.wsDataPayload = null;
+
+        streamsClaim.commit(data.typeId(), data.sizeof());
 
-        return data.sizeof();
+        return true;
     }
 
-    public void doWsEnd(
+    /**
+     * Writes a text frame as for {@link #doWsData(long, int, int, DirectBuffer)}, validating the payload as UTF-8
+     * while it is unmasked. Nothing is written if the payload is invalid, or leaves a sequence incomplete at the
+     * end of the message.
+     * @param utf8State - the validation state after the preceding fragments of the message
+     * @return The validation state after this payload, {@code UTF8_REJECT} if invalid, or
+     *         {@code INSUFFICIENT_CAPACITY} if nothing was written as the streams buffer is full
+     */
+    public int doWsText(
         long targetId,
-        int status)
+        int flags,
+        int maskKey,
+        DirectBuffer payload,
+        int utf8State)
     {
-        final EndFW end = endRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+        final int capacity = payload.capacity();
+        final int index = streamsClaim.claim(DATA_LENGTH_MAXIMUM + capacity);
+
+        if (index == INSUFFICIENT_CAPACITY)
+        {
+            return INSUFFICIENT_CAPACITY;
+        }
+
+        this.wsTextUtf8State = utf8State;
+        this.wsDataPayload = payload;
+        this.wsDataMaskKey = maskKey;
+        this.wsDataFlags = flags;
+
+        final DataFW data = dataRW.wrap(streamsClaim.buffer(), index, index + DATA_LENGTH_MAXIMUM + capacity)
                 .streamId(targetId)
-                .extension(e -> e.set(visitWsEndEx(status)))
+                .payload(setWsTextPayload)
+                .extension(setWsDataEx)
                 .build();
 
-        streamsBuffer.write(end.typeId(), end.buffer(), end.offset(), end.sizeof());
+        this.wsDataPayload = null;
+
+        if ((flags & 0x80) != 0 && wsTextUtf8State != UTF8_ACCEPT)
+        {
+            this.wsTextUtf8State = UTF8_REJECT;
+        }
+
+        if (wsTextUtf8State == UTF8_REJECT)
+        {
+            streamsClaim.abort();
+        }
+        else
+        {
+            streamsClaim.commit(data.typeId(), data.sizeof());
+        }
+
+        return wsTextUtf8State;
+    }
+
+    private void setWsTextPayload(
+        OctetsFW.Builder payload)
+    {
+        payload.set(visitWsTextPayload);
+    }
+
+    private int visitWsTextPayload(
+        MutableDirectBuffer buffer,
+        int offset,
+        int maxLimit)
+    {
+        final int length = wsDataPayload.capacity();
+
+        this.wsTextUtf8State = xorAndValidate(wsDataPayload, 0, buffer, offset, length, wsDataMaskKey, wsTextUtf8State);
+
+        return length;
+    }
+
+    /**
+     * Ends a stream to the application, or if the streams buffer is full, retries until written so the
+     * application stream is never left open
+     */
+    public void doWsEnd(
+        long targetId,
+        int status)
+    {
+        doEnd(targetId, status);
+    }
+
+    private void doEnd(
+        long targetId,
+        int status)
+    {
+        if (pendingEnds != 0 || !tryEnd(targetId, status))
+        {
+            if (pendingEnds == pendingEndIds.length)
+            {
+                this.pendingEndIds = Arrays.copyOf(pendingEndIds, pendingEnds << 1);
+                this.pendingEndStatuses = Arrays.copyOf(pendingEndStatuses, pendingEnds << 1);
+            }
+
+            pendingEndIds[pendingEnds] = targetId;
+            pendingEndStatuses[pendingEnds] = status;
+            pendingEnds++;
+        }
+    }
+
+    private int flushEnds()
+    {
+        int written = 0;
+
+        while (written < pendingEnds && tryEnd(pendingEndIds[written], pendingEndStatuses[written]))
+        {
+            written++;
+        }
+
+        if (written != 0)
+        {
+            System.arraycopy(pendingEndIds, written, pendingEndIds, 0, pendingEnds - written);
+            System.arraycopy(pendingEndStatuses, written, pendingEndStatuses, 0, pendingEnds - written);
+            this.pendingEnds -= written;
+        }
+
+        return written;
+    }
+
+    private boolean tryEnd(
+        long targetId,
+        int status)
+    {
+        final int index = streamsClaim.claim(END_LENGTH_MAXIMUM);
+
+        if (index != INSUFFICIENT_CAPACITY)
+        {
+            this.wsEndStatus = status;
+
+            final EndFW end = endRW.wrap(streamsClaim.buffer(), index, index + END_LENGTH_MAXIMUM)
+                    .streamId(targetId)
+                    .extension(status == NO_WS_STATUS ? resetEndEx : setWsEndEx)
+                    .build();
+
+            streamsClaim.commit(end.typeId(), end.sizeof());
+        }
+
+        return index != INSUFFICIENT_CAPACITY;
     }
 
     public void doHttpBegin(
@@ -204,64 +418,180 @@ public final class Target implements Nukleus
         streamsBuffer.write(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
     }
 
-    public void doHttpData(
+    /**
+     * Writes an HTTP BEGIN whose extension is encoded directly by the given visitor,
+     * for example by copying pre-encoded headers
+     */
+    public void doHttpBegin(
         long targetId,
-        OctetsFW payload,
-        int flagsAndOpcode)
+        long targetRef,
+        long correlationId,
+        Flyweight.Builder.Visitor visitHttpBeginEx)
     {
-        WsFrameFW wsFrame = wsFrameRW.wrap(writeBuffer, SIZE_OF_LONG + SIZE_OF_BYTE, writeBuffer.capacity())
-                .payload(payload.buffer(), payload.offset(), payload.sizeof())
-                .flagsAndOpcode(flagsAndOpcode)
-                .build();
+        this.httpBeginEx = visitHttpBeginEx;
 
-        DataFW data = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+        BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
                 .streamId(targetId)
-                .payload(p -> p.set(wsFrame.buffer(), wsFrame.offset(), wsFrame.sizeof()))
-                .extension(e -> e.reset())
+                .source(SOURCE_NAME_BUFFER, 0, SOURCE_NAME_BUFFER.capacity())
+                .sourceRef(targetRef)
+                .correlationId(correlationId)
+                .extension(setHttpBeginEx)
                 .build();
 
-        streamsBuffer.write(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+        this.httpBeginEx = null;
+
+        streamsBuffer.write(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+    }
+
+    /**
+     * Writes a WebSocket frame, unmasked, as an HTTP DATA
+     * @return {@code true} if written, or {@code false} if the streams buffer is full
+     */
+    public boolean doHttpData(
+        long targetId,
+        OctetsFW payload,
+        int flagsAndOpcode)
+    {
+        final int maxLength = DATA_LENGTH_MAXIMUM + WsFrameFW.headerLength(payload.sizeof()) + payload.sizeof();
+        final int index = streamsClaim.claim(maxLength);
+
+        if (index != INSUFFICIENT_CAPACITY)
+        {
+            this.httpDataPayload = payload;
+            this.httpDataFlagsAndOpcode = flagsAndOpcode;
+
+            final DataFW data = dataRW.wrap(streamsClaim.buffer(), index, index + maxLength)
+                    .streamId(targetId)
+                    .payload(setHttpDataPayload)
+                    .extension(e -> e.reset())
+                    .build();
+
+            this.httpDataPayload = null;
+
+            streamsClaim.commit(data.typeId(), data.sizeof());
+        }
+
+        return index != INSUFFICIENT_CAPACITY;
+    }
+
+    /**
+     * Ends a stream to the client, retried as for {@link #doWsEnd(long, int)} while the streams buffer is full
+     */
+    /**
+     * Runs the given handler on a later duty cycle, so a writer refused by a full streams buffer can retry
+     * without waiting for more credit from the client. A handler is run once, and may register again.
+     */
+    public void awaitCapacity(
+        Runnable handler)
+    {
+        capacityWaiters.add(handler);
+    }
+
+    private void notifyCapacityWaiters()
+    {
+        // handlers registering again are left for the next duty cycle
+        for (int waiters = capacityWaiters.size(); waiters > 0; waiters--)
+        {
+            capacityWaiters.poll().run();
+        }
     }
 
     public void doHttpEnd(
         long targetId)
     {
-        EndFW end = endRW.wrap(writeBuffer, 0, writeBuffer.capacity())
-                .streamId(targetId)
-                .extension(e -> e.reset())
-                .build();
+        doEnd(targetId, NO_WS_STATUS);
+    }
 
-        streamsBuffer.write(end.typeId(), end.buffer(), end.offset(), end.sizeof());
+    private void setWsBeginEx(
+        OctetsFW.Builder extension)
+    {
+        extension.set(visitWsBeginEx);
     }
 
-    private Flyweight.Builder.Visitor visitWsBeginEx(
-        String protocol)
+    private int visitWsBeginEx(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
     {
-        return (buffer, offset, limit) ->
-            wsBeginExRW.wrap(buffer, offset, limit)
-                       .protocol(protocol)
-                       .build()
-                       .sizeof();
+        wsBeginExRW.wrap(buffer, offset, limit);
+        if (wsBeginProtocol != null)
+        {
+            wsBeginExRW.protocol(wsBeginProtocol, 0, wsBeginProtocol.capacity());
+        }
+        return wsBeginExRW.build().sizeof();
     }
 
-    private Flyweight.Builder.Visitor visitWsDataEx(
-        int flags)
+    private void setWsDataPayload(
+        OctetsFW.Builder payload)
     {
-        return (buffer, offset, limit) ->
-            wsDataExRW.wrap(buffer, offset, limit)
-                      .flags((byte) flags)
-                      .build()
-                      .sizeof();
+        payload.set(visitWsDataPayload);
     }
 
-    private Flyweight.Builder.Visitor visitWsEndEx(
-        int status)
+    private int visitWsDataPayload(
+        MutableDirectBuffer buffer,
+        int offset,
+        int maxLimit)
     {
-        return (buffer, offset, limit) ->
-            wsEndExRW.wrap(buffer, offset, limit)
-                     .code((short) status)
-                     .build()
-                     .sizeof();
+        return xor(wsDataPayload, 0, buffer, offset, wsDataPayload.capacity(), wsDataMaskKey);
+    }
+
+    private void setWsDataEx(
+        OctetsFW.Builder extension)
+    {
+        extension.set(visitWsDataEx);
+    }
+
+    private int visitWsDataEx(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        return wsDataExRW.wrap(buffer, offset, limit)
+                         .flags((byte) wsDataFlags)
+                         .build()
+                         .sizeof();
+    }
+
+    private void setWsEndEx(
+        OctetsFW.Builder extension)
+    {
+        extension.set(visitWsEndEx);
+    }
+
+    private int visitWsEndEx(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        return wsEndExRW.wrap(buffer, offset, limit)
+                        .code((short) wsEndStatus)
+                        .build()
+                        .sizeof();
+    }
+
+    private void setHttpBeginEx(
+        OctetsFW.Builder extension)
+    {
+        extension.set(httpBeginEx);
+    }
+
+    private void setHttpDataPayload(
+        OctetsFW.Builder payload)
+    {
+        payload.set(visitHttpDataPayload);
+    }
+
+    // encodes the websocket frame header in place, directly followed by the payload
+    private int visitHttpDataPayload(
+        MutableDirectBuffer buffer,
+        int offset,
+        int maxLimit)
+    {
+        return wsFrameRW.wrap(buffer, offset, maxLimit)
+                        .payload(httpDataPayload.buffer(), httpDataPayload.offset(), httpDataPayload.sizeof())
+                        .flagsAndOpcode(httpDataFlagsAndOpcode)
+                        .build()
+                        .sizeof();
     }
 
     private Flyweight.Builder.Visitor visitHttpBeginEx(
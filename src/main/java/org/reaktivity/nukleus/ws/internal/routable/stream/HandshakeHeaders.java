@@ -0,0 +1,212 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.util.function.Consumer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.ws.internal.routable.Route;
+import org.reaktivity.nukleus.ws.internal.routable.RouteDispatch;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.StringFW;
+import org.reaktivity.nukleus.ws.internal.util.HeaderValueTokenizer;
+
+/**
+ * Scans the HTTP headers of an upgrade request for the headers relevant to the WebSocket handshake,
+ * matching header names directly against the encoded bytes so that no {@code String} or {@code Map}
+ * is allocated per handshake.
+ * <b>Each instance of this class is assumed to be used by one and only one thread.</b>
+ */
+public final class HandshakeHeaders
+{
+    private static final DirectBuffer SEC_WEBSOCKET_KEY = new UnsafeBuffer("sec-websocket-key".getBytes(US_ASCII));
+    private static final DirectBuffer SEC_WEBSOCKET_VERSION = new UnsafeBuffer("sec-websocket-version".getBytes(US_ASCII));
+    private static final DirectBuffer SEC_WEBSOCKET_PROTOCOL = new UnsafeBuffer("sec-websocket-protocol".getBytes(US_ASCII));
+    private static final DirectBuffer WEBSOCKET_VERSION_13 = new UnsafeBuffer("13".getBytes(US_ASCII));
+
+    private static final int FIELD_SIZE_STRING_LENGTH = 1;
+
+    private final DirectBuffer keyRO = new UnsafeBuffer(new byte[0]);
+    private final DirectBuffer protocolsRO = new UnsafeBuffer(new byte[0]);
+    private final DirectBuffer protocolRO = new UnsafeBuffer(new byte[0]);
+    private final HeaderValueTokenizer tokenizer = new HeaderValueTokenizer();
+
+    private final Consumer<HttpHeaderFW> onHeader = this::onHeader;
+    private final Consumer<HttpHeaderFW> onProtocolHeader = this::onProtocolHeader;
+
+    private ListFW<HttpHeaderFW> headers;
+    private boolean key;
+    private boolean version13;
+    private int protocolsCount;
+
+    private RouteDispatch dispatch;
+    private Route negotiated;
+
+    public HandshakeHeaders wrap(
+        ListFW<HttpHeaderFW> headers)
+    {
+        this.headers = headers;
+        this.key = false;
+        this.version13 = false;
+        this.protocolsCount = 0;
+
+        headers.forEach(onHeader);
+
+        return this;
+    }
+
+    public boolean valid()
+    {
+        return key && version13;
+    }
+
+    /**
+     * Gets the value of the {@code sec-websocket-key} header
+     * @return A buffer over the header value, valid only until the next call to {@link #wrap(ListFW)}
+     */
+    public DirectBuffer key()
+    {
+        return keyRO;
+    }
+
+    public boolean hasProtocols()
+    {
+        return protocolsCount != 0;
+    }
+
+    /**
+     * Selects the first protocol offered in the {@code sec-websocket-protocol} headers, in client preference order,
+     * that has a route
+     * @param dispatch - Routes for the handshake
+     * @return The route for the selected protocol, or {@code null} if no offered protocol has a route
+     */
+    public Route negotiate(
+        RouteDispatch dispatch)
+    {
+        this.negotiated = null;
+
+        if (protocolsCount == 1)
+        {
+            negotiate(dispatch, protocolsRO, 0, protocolsRO.capacity());
+        }
+        else if (protocolsCount > 1)
+        {
+            this.dispatch = dispatch;
+            headers.forEach(onProtocolHeader);
+            this.dispatch = null;
+        }
+
+        return negotiated;
+    }
+
+    /**
+     * Gets the protocol selected by {@link #negotiate(RouteDispatch)}
+     * @return A buffer over the selected protocol, valid only until the next call to {@link #wrap(ListFW)}
+     */
+    public DirectBuffer protocol()
+    {
+        return protocolRO;
+    }
+
+    private void onHeader(
+        HttpHeaderFW header)
+    {
+        final StringFW name = header.name();
+        final StringFW value = header.value();
+
+        if (matches(name, SEC_WEBSOCKET_KEY))
+        {
+            wrapValue(keyRO, value);
+            key = true;
+        }
+        else if (matches(name, SEC_WEBSOCKET_VERSION))
+        {
+            version13 = matches(value, WEBSOCKET_VERSION_13);
+        }
+        else if (matches(name, SEC_WEBSOCKET_PROTOCOL))
+        {
+            if (protocolsCount == 0)
+            {
+                wrapValue(protocolsRO, value);
+            }
+            protocolsCount++;
+        }
+    }
+
+    private void onProtocolHeader(
+        HttpHeaderFW header)
+    {
+        if (negotiated == null && matches(header.name(), SEC_WEBSOCKET_PROTOCOL))
+        {
+            final StringFW value = header.value();
+            final int offset = value.offset() + FIELD_SIZE_STRING_LENGTH;
+            negotiate(dispatch, value.buffer(), offset, Math.max(value.limit() - offset, 0));
+        }
+    }
+
+    private void negotiate(
+        RouteDispatch dispatch,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        tokenizer.wrap(buffer, offset, length);
+
+        while (negotiated == null && tokenizer.next())
+        {
+            final int tokenOffset = tokenizer.tokenOffset();
+            final int tokenLength = tokenizer.tokenLength();
+
+            negotiated = dispatch.resolve(buffer, tokenOffset, tokenLength);
+
+            if (negotiated != null)
+            {
+                protocolRO.wrap(buffer, tokenOffset, tokenLength);
+            }
+        }
+    }
+
+    private static void wrapValue(
+        DirectBuffer target,
+        StringFW value)
+    {
+        final int offset = value.offset() + FIELD_SIZE_STRING_LENGTH;
+        target.wrap(value.buffer(), offset, Math.max(value.limit() - offset, 0));
+    }
+
+    private static boolean matches(
+        StringFW string,
+        DirectBuffer expected)
+    {
+        final DirectBuffer buffer = string.buffer();
+        final int offset = string.offset() + FIELD_SIZE_STRING_LENGTH;
+        final int length = string.limit() - offset;
+        final int expectedLength = expected.capacity();
+
+        boolean matches = length == expectedLength;
+
+        for (int i = 0; matches && i < expectedLength; i++)
+        {
+            matches = buffer.getByte(offset + i) == expected.getByte(i);
+        }
+
+        return matches;
+    }
+}
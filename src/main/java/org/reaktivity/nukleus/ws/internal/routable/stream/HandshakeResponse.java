@@ -0,0 +1,161 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.ws.internal.types.Flyweight;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+
+/**
+ * Encodes the HTTP headers of a {@code 101 Switching Protocols} response. The constant headers are encoded
+ * once into a template that is copied per response, followed by the {@code sec-websocket-accept} header and
+ * the optional {@code sec-websocket-protocol} header.
+ * <b>Each instance of this class is assumed to be used by one and only one thread.</b>
+ */
+final class HandshakeResponse implements Flyweight.Builder.Visitor
+{
+    private static final DirectBuffer TEMPLATE = encodeTemplate();
+
+    // header representation and length prefixed name, as encoded in HttpHeaderFW
+    private static final DirectBuffer SEC_WEBSOCKET_ACCEPT = encodeName("sec-websocket-accept");
+    private static final DirectBuffer SEC_WEBSOCKET_PROTOCOL = encodeName("sec-websocket-protocol");
+
+    private final Map<String, DirectBuffer> protocols = new HashMap<>();
+
+    private DirectBuffer hash;
+    private DirectBuffer protocol;
+    private int protocolOffset;
+    private int protocolLength;
+
+    /**
+     * Prepares the response headers
+     * @param hash - the {@code sec-websocket-accept} header value
+     * @return This response, as a visitor for the HTTP begin extension
+     */
+    HandshakeResponse wrap(
+        DirectBuffer hash)
+    {
+        this.hash = hash;
+        this.protocol = null;
+        return this;
+    }
+
+    HandshakeResponse protocol(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        this.protocol = buffer;
+        this.protocolOffset = offset;
+        this.protocolLength = length;
+        return this;
+    }
+
+    HandshakeResponse protocol(
+        String protocol)
+    {
+        if (protocol != null)
+        {
+            DirectBuffer encoded = protocols.get(protocol);
+            if (encoded == null)
+            {
+                // protocols come from routes, so this cache is bounded
+                encoded = new UnsafeBuffer(protocol.getBytes(UTF_8));
+                protocols.put(protocol, encoded);
+            }
+            protocol(encoded, 0, encoded.capacity());
+        }
+        return this;
+    }
+
+    @Override
+    public int visit(
+        MutableDirectBuffer buffer,
+        int offset,
+        int maxLimit)
+    {
+        int progress = offset;
+
+        buffer.putBytes(progress, TEMPLATE, 0, TEMPLATE.capacity());
+        progress += TEMPLATE.capacity();
+
+        progress = putHeader(buffer, progress, SEC_WEBSOCKET_ACCEPT, hash, 0, hash.capacity());
+
+        if (protocol != null)
+        {
+            progress = putHeader(buffer, progress, SEC_WEBSOCKET_PROTOCOL, protocol, protocolOffset, protocolLength);
+        }
+
+        return progress - offset;
+    }
+
+    private static int putHeader(
+        MutableDirectBuffer buffer,
+        int offset,
+        DirectBuffer name,
+        DirectBuffer value,
+        int valueOffset,
+        int valueLength)
+    {
+        int progress = offset;
+
+        buffer.putBytes(progress, name, 0, name.capacity());
+        progress += name.capacity();
+
+        buffer.putByte(progress, (byte) valueLength);
+        progress++;
+
+        buffer.putBytes(progress, value, valueOffset, valueLength);
+        progress += valueLength;
+
+        return progress;
+    }
+
+    private static DirectBuffer encodeName(
+        String name)
+    {
+        final byte[] bytes = name.getBytes(US_ASCII);
+        final MutableDirectBuffer encoded = new UnsafeBuffer(new byte[2 + bytes.length]);
+        encoded.putByte(0, (byte) 0);
+        encoded.putByte(1, (byte) bytes.length);
+        encoded.putBytes(2, bytes);
+        return encoded;
+    }
+
+    private static DirectBuffer encodeTemplate()
+    {
+        final MutableDirectBuffer buffer = new UnsafeBuffer(new byte[256]);
+        final HttpBeginExFW httpBeginEx = new HttpBeginExFW.Builder()
+                .wrap(buffer, 0, buffer.capacity())
+                .headers(hs ->
+                {
+                    hs.item(h -> h.representation((byte) 0).name(":status").value("101"));
+                    hs.item(h -> h.representation((byte) 0).name("upgrade").value("websocket"));
+                    hs.item(h -> h.representation((byte) 0).name("connection").value("upgrade"));
+                })
+                .build();
+
+        return new UnsafeBuffer(buffer, 0, httpBeginEx.sizeof());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable.stream;
+
+import java.util.function.LongConsumer;
+
+import org.agrona.collections.Long2ObjectHashMap;
+import org.reaktivity.nukleus.ws.internal.util.TimerWheel;
+
+/**
+ * Keepalive timers for established streams, driven by a timer wheel. Each stream has at most one timer
+ * outstanding, scheduled either after the idle interval or after the pong timeout, and rescheduled by the
+ * stream from its timer handler as needed.
+ * <b>Each instance of this class is assumed to be used by one and only one thread.</b>
+ */
+public final class Keepalives
+{
+    private final long interval;
+    private final long timeout;
+    private final TimerWheel timers;
+    private final Long2ObjectHashMap<Runnable> handlers;
+    private final LongConsumer onExpired;
+
+    private long now;
+
+    /**
+     * @param interval - how long a stream may be idle before it is pinged
+     * @param timeout - how long to wait for the pong once pinged
+     * @param tickResolution - duration of one tick of the timer wheel
+     * @param startTime - the current time
+     */
+    public Keepalives(
+        long interval,
+        long timeout,
+        long tickResolution,
+        long startTime)
+    {
+        this.interval = interval;
+        this.timeout = timeout;
+        this.timers = new TimerWheel(tickResolution, startTime);
+        this.handlers = new Long2ObjectHashMap<>();
+        this.onExpired = this::onExpired;
+        this.now = startTime;
+    }
+
+    /**
+     * Starts the keepalive timer of a stream, first firing after the idle interval
+     * @param streamId - identifies the stream, unique while started
+     * @param handler - called each time the timer of the stream fires
+     */
+    public void start(
+        long streamId,
+        Runnable handler)
+    {
+        handlers.put(streamId, handler);
+        timers.schedule(now + interval, streamId);
+    }
+
+    /**
+     * Reschedules the timer of a started stream after the idle interval, typically from its handler
+     */
+    public void awaitIdle(
+        long streamId)
+    {
+        timers.schedule(now + interval, streamId);
+    }
+
+    /**
+     * Reschedules the timer of a started stream after the pong timeout, typically from its handler
+     */
+    public void awaitPong(
+        long streamId)
+    {
+        timers.schedule(now + timeout, streamId);
+    }
+
+    /**
+     * Stops the keepalive timer of a stream, so any timer still outstanding is ignored when it fires
+     */
+    public void stop(
+        long streamId)
+    {
+        handlers.remove(streamId);
+    }
+
+    /**
+     * Advances the timers to the given time, calling the handlers of streams whose timers are due
+     * @param now - the current time
+     * @return The number of timers that fired
+     */
+    public int expire(
+        long now)
+    {
+        this.now = now;
+        return timers.expire(now, onExpired);
+    }
+
+    private void onExpired(
+        long streamId)
+    {
+        final Runnable handler = handlers.get(streamId);
+        if (handler != null)
+        {
+            handler.run();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable.stream;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * The reply stream to the client, as seen from its request stream. Control frames originated by the nukleus
+ * are charged against the http window like frames from the application, and queued behind them when it is exhausted.
+ */
+public interface ReplyStream
+{
+    void doPing();
+
+    /**
+     * @param maskKey - the masking key of the ping
+     * @param payload - the masked ping payload, at most 125 bytes as for all control frames
+     */
+    void doPong(
+        int maskKey,
+        DirectBuffer payload);
+
+    void doClose(
+        short status);
+
+    /**
+     * Tells the client the connection is closing, if the http window allows, without awaiting its close, then ends
+     * the reply stream and refuses the rest of the reply from the application
+     */
+    void doAbort(
+        short status);
+}
@@ -20,73 +20,221 @@ import static org.agrona.BitUtil.isPowerOfTwo;
 import java.nio.ByteBuffer;
 import java.util.BitSet;
 
+import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
-import org.agrona.collections.Hashing;
 import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
 
 /**
  * A chunk of shared memory for temporary storage of data. This is logically segmented into a set of
- * slots of equal size. Methods are provided for acquiring a slot, getting a buffer that can be used
- * to store data in it, and releasing the slot once it is no longer needed.
+ * slots, in one or more size classes each with its own share of the memory. Methods are provided for
+ * acquiring a slot, getting a buffer that can be used to store data in it, moving its data to a slot of
+ * a larger class as it grows, and releasing the slot once it is no longer needed. Free slots of each class
+ * are kept on a stack, so both acquire and release take constant time however full the slab is, and the
+ * most recently released slot, likely still in cache, is reused first. An optional overflow tier of fixed-size
+ * pages, typically in a memory-mapped file, is used only once no slot large enough is free in memory.
  * <b>Each instance of this class is assumed to be used by one and only one thread.</b>
  */
 public class Slab
 {
     static final int NO_SLOT = -1;
 
+    // slot ids carry the size class above the index of the slot within its class
+    private static final int CLASS_SHIFT = 24;
+    private static final int INDEX_MASK = (1 << CLASS_SHIFT) - 1;
+
     private final MutableDirectBuffer mutableFW = new UnsafeBuffer(new byte[0]);
+    private final MutableDirectBuffer copyFW = new UnsafeBuffer(new byte[0]);
 
-    private final int slotCapacity;
-    private final int bitsPerSlot;
-    private final int mask;
+    // retained so the direct memory is not freed while its slots are in use
     private final MutableDirectBuffer buffer;
-    private final BitSet used;
-
-    private int availableSlots;
+    private final int overflowClass;
+    private final int[] slotCapacities;
+    private final int[] bitsPerSlot;
+    private final long[] classAddresses;
+    private final BitSet[] used;
+    private final int[][] freeSlots;
+    private final int[] availableSlots;
+    private final AtomicCounter[] acquiredSlots;
+    private final AtomicCounter overflowBytes;
 
     public Slab(int totalCapacity, int slotCapacity)
     {
-        if (!isPowerOfTwo(totalCapacity))
+        this(new int[] { slotCapacity }, new int[] { checkCapacity(totalCapacity, slotCapacity) }, null);
+    }
+
+    /**
+     * @param slotCapacities - the slot capacity of each size class, in ascending powers of 2
+     * @param classCapacities - the memory for each size class, rounded down to a whole number of slots
+     * @param acquiredSlots - counters of slots in use for each size class, or {@code null}
+     */
+    public Slab(
+        int[] slotCapacities,
+        int[] classCapacities,
+        AtomicCounter[] acquiredSlots)
+    {
+        this(slotCapacities, classCapacities, acquiredSlots, null, 0, null);
+    }
+
+    /**
+     * @param slotCapacities - the slot capacity of each size class, in ascending powers of 2
+     * @param classCapacities - the memory for each size class, rounded down to a whole number of slots
+     * @param acquiredSlots - counters of slots in use for each size class, then for the overflow tier, or {@code null}
+     * @param overflow - the memory for the overflow tier, or {@code null} for none
+     * @param overflowSlotCapacity - the page size of the overflow tier, a power of 2
+     * @param overflowBytes - counter of bytes written to the overflow tier, or {@code null}
+     */
+    public Slab(
+        int[] slotCapacities,
+        int[] classCapacities,
+        AtomicCounter[] acquiredSlots,
+        MutableDirectBuffer overflow,
+        int overflowSlotCapacity,
+        AtomicCounter overflowBytes)
+    {
+        if (slotCapacities.length == 0 || slotCapacities.length != classCapacities.length)
         {
-            throw new IllegalArgumentException("totalCapacity is not a power of 2");
+            throw new IllegalArgumentException("slotCapacities and classCapacities differ in length");
         }
-        if (!isPowerOfTwo(slotCapacity))
+
+        final int memoryClasses = slotCapacities.length;
+        final int classes = overflow != null ? memoryClasses + 1 : memoryClasses;
+        this.slotCapacities = new int[classes];
+        this.bitsPerSlot = new int[classes];
+        this.classAddresses = new long[classes];
+        this.used = new BitSet[classes];
+        this.freeSlots = new int[classes][];
+        this.availableSlots = new int[classes];
+        this.acquiredSlots = acquiredSlots;
+        this.overflowClass = overflow != null ? memoryClasses : -1;
+        this.overflowBytes = overflowBytes;
+
+        long totalCapacity = 0L;
+        for (int sizeClass = 0; sizeClass < memoryClasses; sizeClass++)
         {
-            throw new IllegalArgumentException("slotCapacity is not a power of 2");
+            final int slotCapacity = slotCapacities[sizeClass];
+            if (!isPowerOfTwo(slotCapacity))
+            {
+                throw new IllegalArgumentException("slotCapacity is not a power of 2");
+            }
+            if (sizeClass != 0 && slotCapacity <= slotCapacities[sizeClass - 1])
+            {
+                throw new IllegalArgumentException("slotCapacities are not in ascending order");
+            }
+
+            final int totalSlots = initSizeClass(sizeClass, slotCapacity, classCapacities[sizeClass], totalCapacity);
+
+            totalCapacity += (long) totalSlots << bitsPerSlot[sizeClass];
         }
-        if (slotCapacity > totalCapacity)
+
+        if (totalCapacity > Integer.MAX_VALUE)
         {
-            throw new IllegalArgumentException("slotCapacity exceeds totalCapacity");
+            throw new IllegalArgumentException("classCapacities exceed 2GB in total");
+        }
+
+        this.buffer = new UnsafeBuffer(ByteBuffer.allocateDirect((int) totalCapacity));
+
+        for (int sizeClass = 0; sizeClass < memoryClasses; sizeClass++)
+        {
+            classAddresses[sizeClass] += buffer.addressOffset();
+        }
+
+        if (overflow != null)
+        {
+            if (!isPowerOfTwo(overflowSlotCapacity))
+            {
+                throw new IllegalArgumentException("overflowSlotCapacity is not a power of 2");
+            }
+
+            initSizeClass(overflowClass, overflowSlotCapacity, overflow.capacity(), overflow.addressOffset());
         }
-        this.slotCapacity = slotCapacity;
-        this.bitsPerSlot = Integer.numberOfTrailingZeros(slotCapacity);
-        int totalSlots = totalCapacity / slotCapacity;
-        this.mask = totalSlots - 1;
-        this.buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(totalCapacity));
-        this.used = new BitSet(totalSlots);
-        this.availableSlots = totalSlots;
     }
 
     /**
-     * Reserves a slot for use by the given stream
+     * Reserves a slot of the smallest size class for use by the given stream
      * @param streamId - Stream id
      * @return Id of the acquired slot, or NO_SLOT if all slots are in use
      */
     public int acquire(long streamId)
     {
-        if (availableSlots == 0)
+        return acquire(streamId, 0);
+    }
+
+    /**
+     * Reserves a slot for use by the given stream, from the smallest size class large enough with a slot available
+     * @param streamId - Stream id
+     * @param minimumCapacity - the capacity needed
+     * @return Id of the acquired slot, or NO_SLOT if no slot large enough is available
+     */
+    public int acquire(long streamId, int minimumCapacity)
+    {
+        for (int sizeClass = 0; sizeClass < slotCapacities.length; sizeClass++)
+        {
+            if (slotCapacities[sizeClass] >= minimumCapacity && availableSlots[sizeClass] != 0)
+            {
+                final int slot = freeSlots[sizeClass][--availableSlots[sizeClass]];
+                assert !used[sizeClass].get(slot & INDEX_MASK);
+                used[sizeClass].set(slot & INDEX_MASK);
+
+                if (acquiredSlots != null)
+                {
+                    acquiredSlots[sizeClass].increment();
+                }
+
+                return slot;
+            }
+        }
+
+        return NO_SLOT;
+    }
+
+    /**
+     * Moves the data in a slot to a slot of a larger size class, releasing the original slot
+     * @param streamId - Stream id
+     * @param slot - Id of a previously acquired slot
+     * @param length - the length of the data to be moved
+     * @param minimumCapacity - the capacity needed
+     * @return Id of the acquired slot, or NO_SLOT if no slot large enough is available, retaining the original slot
+     */
+    public int grow(long streamId, int slot, int length, int minimumCapacity)
+    {
+        final int newSlot = acquire(streamId, minimumCapacity);
+
+        if (newSlot != NO_SLOT)
         {
-            return NO_SLOT;
+            copyFW.wrap(address(slot), length);
+            write(newSlot, 0, copyFW, 0, length);
+            release(slot);
         }
-        int slot = Hashing.hash(streamId, mask);
-        while (used.get(slot))
+
+        return newSlot;
+    }
+
+    /**
+     * Copies data into the given slot, counting any bytes written to the overflow tier
+     * @param slot - Id of a previously acquired slot
+     * @param offset - the offset in the slot
+     * @param src - the data to copy
+     * @param srcOffset - the offset of the data
+     * @param length - the length of the data
+     */
+    public void write(int slot, int offset, DirectBuffer src, int srcOffset, int length)
+    {
+        buffer(slot, offset).putBytes(0, src, srcOffset, length);
+
+        if (overflowBytes != null && slot >>> CLASS_SHIFT == overflowClass)
         {
-            slot = ++slot & mask;
+            overflowBytes.add(length);
         }
-        used.set(slot);
-        availableSlots--;
+    }
 
-        return slot;
+    /**
+     * @param slot - Id of a previously acquired slot
+     * @return The capacity of the slot
+     */
+    public int capacity(int slot)
+    {
+        return slotCapacities[slot >>> CLASS_SHIFT];
     }
 
     /**
@@ -96,10 +244,7 @@ public class Slab
      */
     public MutableDirectBuffer buffer(int slot)
     {
-        assert used.get(slot);
-        final long slotAddressOffset = buffer.addressOffset() + (slot << bitsPerSlot);
-        mutableFW.wrap(slotAddressOffset, slotCapacity);
-        return mutableFW;
+        return buffer(slot, 0);
     }
 
     /**
@@ -111,9 +256,7 @@ public class Slab
      */
     public MutableDirectBuffer buffer(int slot, int offset)
     {
-        assert used.get(slot);
-        final long slotAddressOffset = buffer.addressOffset() + (slot << bitsPerSlot);
-        mutableFW.wrap(slotAddressOffset + offset, slotCapacity);
+        mutableFW.wrap(address(slot) + offset, capacity(slot) - offset);
         return mutableFW;
     }
 
@@ -123,9 +266,65 @@ public class Slab
      */
     public void release(int slot)
     {
-        assert used.get(slot);
-        used.clear(slot);
-        availableSlots++;
+        final int sizeClass = slot >>> CLASS_SHIFT;
+        assert used[sizeClass].get(slot & INDEX_MASK);
+        used[sizeClass].clear(slot & INDEX_MASK);
+        freeSlots[sizeClass][availableSlots[sizeClass]++] = slot;
+
+        if (acquiredSlots != null)
+        {
+            acquiredSlots[sizeClass].add(-1L);
+        }
+    }
+
+    private int initSizeClass(
+        int sizeClass,
+        int slotCapacity,
+        int classCapacity,
+        long classAddress)
+    {
+        final int totalSlots = Math.min(classCapacity / slotCapacity, INDEX_MASK + 1);
+
+        this.slotCapacities[sizeClass] = slotCapacity;
+        this.bitsPerSlot[sizeClass] = Integer.numberOfTrailingZeros(slotCapacity);
+        this.classAddresses[sizeClass] = classAddress;
+        this.used[sizeClass] = new BitSet(totalSlots);
+        this.freeSlots[sizeClass] = new int[totalSlots];
+        this.availableSlots[sizeClass] = totalSlots;
+
+        // lowest slots on top of the stack, so a lightly used slab touches as little memory as possible
+        for (int index = 0; index < totalSlots; index++)
+        {
+            freeSlots[sizeClass][totalSlots - 1 - index] = sizeClass << CLASS_SHIFT | index;
+        }
+
+        return totalSlots;
+    }
+
+    private long address(int slot)
+    {
+        final int sizeClass = slot >>> CLASS_SHIFT;
+        final int index = slot & INDEX_MASK;
+        assert used[sizeClass].get(index);
+        return classAddresses[sizeClass] + ((long) index << bitsPerSlot[sizeClass]);
     }
 
+    private static int checkCapacity(
+        int totalCapacity,
+        int slotCapacity)
+    {
+        if (!isPowerOfTwo(totalCapacity))
+        {
+            throw new IllegalArgumentException("totalCapacity is not a power of 2");
+        }
+        if (!isPowerOfTwo(slotCapacity))
+        {
+            throw new IllegalArgumentException("slotCapacity is not a power of 2");
+        }
+        if (slotCapacity > totalCapacity)
+        {
+            throw new IllegalArgumentException("slotCapacity exceeds totalCapacity");
+        }
+        return totalCapacity;
+    }
 }
@@ -15,34 +15,37 @@
  */
 package org.reaktivity.nukleus.ws.internal.routable.stream;
 
-import static java.lang.Integer.highestOneBit;
-import static java.nio.charset.StandardCharsets.US_ASCII;
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.agrona.BitUtil.SIZE_OF_SHORT;
-import static org.reaktivity.nukleus.ws.internal.routable.Route.protocolMatches;
 import static org.reaktivity.nukleus.ws.internal.router.RouteKind.OUTPUT_ESTABLISHED;
+import static org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW.STATUS_GOING_AWAY;
+import static org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW.STATUS_INVALID_UTF8;
 import static org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW.STATUS_NORMAL_CLOSURE;
+import static org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW.STATUS_MESSAGE_TOO_LARGE;
 import static org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW.STATUS_PROTOCOL_ERROR;
-
-import java.security.MessageDigest;
-import java.util.Base64;
-import java.util.Base64.Encoder;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import static org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW.STATUS_UNEXPECTED_CONDITION;
+import static org.reaktivity.nukleus.ws.internal.util.BufferUtil.maskAt;
+import static org.reaktivity.nukleus.ws.internal.util.BufferUtil.xor;
+import static org.reaktivity.nukleus.ws.internal.util.HandshakeHash.HASH_LENGTH;
+import static org.reaktivity.nukleus.ws.internal.util.RingBufferClaim.INSUFFICIENT_CAPACITY;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.UTF8_ACCEPT;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.UTF8_REJECT;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.xorAndValidate;
+
+import java.util.function.Consumer;
 import java.util.function.LongFunction;
 import java.util.function.LongSupplier;
-import java.util.function.Predicate;
 
 import org.agrona.DirectBuffer;
-import org.agrona.LangUtil;
 import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
 import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
 import org.reaktivity.nukleus.ws.internal.routable.Route;
+import org.reaktivity.nukleus.ws.internal.routable.RouteDispatch;
 import org.reaktivity.nukleus.ws.internal.routable.Source;
 import org.reaktivity.nukleus.ws.internal.routable.Target;
 import org.reaktivity.nukleus.ws.internal.router.Correlation;
+import org.reaktivity.nukleus.ws.internal.types.Flyweight;
 import org.reaktivity.nukleus.ws.internal.types.OctetsFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.DataFW;
@@ -52,29 +55,30 @@ import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.ResetFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.WindowFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW;
+import org.reaktivity.nukleus.ws.internal.util.HandshakeHash;
 import org.reaktivity.nukleus.ws.internal.util.function.LongObjectBiConsumer;
 
 public final class SourceInputStreamFactory
 {
-    private static final byte[] HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11".getBytes(UTF_8);
-    private static final String WEBSOCKET_VERSION_13 = "13";
+    private static final int HEADER_SIZE_MINIMUM = 1 + 1;
 
-    private static final int HEADER_SIZE_PAYLOAD_8_WITH_MASKING_KEY = 1 + 1 + 4;
-    private static final int HEADER_SIZE_EXTENDED_PAYLOAD_16_WITH_MASKING_KEY = HEADER_SIZE_PAYLOAD_8_WITH_MASKING_KEY + 2;
-    private static final int HEADER_SIZE_EXTENDED_PAYLOAD_64_WITH_MASKING_KEY = HEADER_SIZE_PAYLOAD_8_WITH_MASKING_KEY + 8;
+    private static final int CONTROL_PAYLOAD_LENGTH_MAXIMUM = 125;
 
     private static final int SLAB_SLOT_NOT_ALLOCATED = -1;
 
-    private final MessageDigest sha1 = initSHA1();
-
     private final FrameFW frameRO = new FrameFW();
 
     private final BeginFW beginRO = new BeginFW();
     private final DataFW dataRO = new DataFW();
     private final EndFW endRO = new EndFW();
-    private final OctetsFW octetsRO = new OctetsFW();
 
     private final HttpBeginExFW httpBeginExRO = new HttpBeginExFW();
+    private final Flyweight.Visitor<HttpBeginExFW> wrapHttpBeginEx = httpBeginExRO::wrap;
+    private final HandshakeHeaders handshakeRO = new HandshakeHeaders();
+
+    private final HandshakeHash handshakeHash = new HandshakeHash();
+    private final MutableDirectBuffer handshakeHashRW = new UnsafeBuffer(new byte[HASH_LENGTH]);
+    private final Correlation correlationRW = new Correlation();
 
     private final WsFrameFW wsFrameRO = new WsFrameFW();
 
@@ -82,23 +86,58 @@ public final class SourceInputStreamFactory
     private final ResetFW resetRO = new ResetFW();
 
     private final Source source;
-    private final LongFunction<List<Route>> supplyRoutes;
+    private final LongFunction<RouteDispatch> supplyDispatch;
     private final LongSupplier supplyTargetId;
     private final LongObjectBiConsumer<Correlation> correlateNew;
+    private final LongFunction<Correlation> correlateEstablished;
     private final Slab slab;
-
+    private final Slab reassemblySlab;
+    private final Long2ObjectHashMap<Consumer<ReplyStream>> replies;
+    private final Long2ObjectHashMap<Runnable> handshakes;
+    private final Keepalives keepalives;
+    private final boolean validateUtf8;
+    private final int maximumMessageSize;
+
+    private final MutableDirectBuffer messageRO = new UnsafeBuffer(new byte[0]);
+    private final MutableDirectBuffer payloadRO = new UnsafeBuffer(new byte[0]);
+
+    /**
+     * @param reassemblySlab - slots for reassembling fragmented messages, or {@code null} to forward each
+     *                         fragment as it arrives, flagged with its FIN bit and opcode
+     * @param replies - handlers of request streams awaiting their reply stream, by target correlation id,
+     *                  so pings can be answered on the reply stream without involving the application
+     * @param handshakes - handlers of request streams awaiting their reply stream, by target correlation id,
+     *                     called if the application does not reply before the handshake expires
+     * @param keepalives - timers to ping streams idle for too long, or {@code null} to disable keepalive pings
+     * @param validateUtf8 - whether to validate text messages as UTF-8, ending the stream on invalid text
+     * @param maximumMessageSize - the largest message accepted, across all its fragments, before closing with 1009
+     */
     public SourceInputStreamFactory(
         Source source,
-        LongFunction<List<Route>> supplyRoutes,
+        LongFunction<RouteDispatch> supplyDispatch,
         LongSupplier supplyTargetId,
         LongObjectBiConsumer<Correlation> correlateNew,
-        Slab slab)
+        LongFunction<Correlation> correlateEstablished,
+        Slab slab,
+        Slab reassemblySlab,
+        Long2ObjectHashMap<Consumer<ReplyStream>> replies,
+        Long2ObjectHashMap<Runnable> handshakes,
+        Keepalives keepalives,
+        boolean validateUtf8,
+        int maximumMessageSize)
     {
         this.source = source;
-        this.supplyRoutes = supplyRoutes;
+        this.supplyDispatch = supplyDispatch;
         this.supplyTargetId = supplyTargetId;
         this.correlateNew = correlateNew;
+        this.correlateEstablished = correlateEstablished;
         this.slab = slab;
+        this.reassemblySlab = reassemblySlab;
+        this.replies = replies;
+        this.handshakes = handshakes;
+        this.keepalives = keepalives;
+        this.validateUtf8 = validateUtf8;
+        this.maximumMessageSize = maximumMessageSize;
     }
 
     public MessageHandler newStream()
@@ -112,12 +151,44 @@ public final class SourceInputStreamFactory
 
         private long sourceId;
 
+        private Route route;
         private Target target;
         private long targetId;
 
+        private ReplyStream reply;
+
+        // handlers registered on begin, bound once per stream
+        private final MessageHandler handleThrottle = this::handleThrottle;
+        private final Consumer<ReplyStream> onReply = this::onReply;
+        private final Runnable onHandshakeExpired = this::onHandshakeExpired;
+        private final Runnable onKeepalive = this::onKeepalive;
+        private final MessageHandler afterBeginOrData = this::afterBeginOrData;
+
+        private boolean inboundSinceKeepalive;
+        private boolean pongPending;
+
+        // headers of data frames consumed from the source are credited back with the next window from the target,
+        // so the source is granted exactly the framing it used rather than an estimate from the size of the window
+        private long sourceWindow;
+        private int framingCredit;
+
+        // the slot holds at most one partial frame from offset zero, filled only up to the bytes that frame needs
+        // and released once it decodes, so its write cursor is the only cursor and no byte is copied twice
         private int slabSlot = SLAB_SLOT_NOT_ALLOCATED;
         private int slabSlotLimit = 0;
-        private int slabSlotOffset = 0;
+
+        private int frameOpcode;
+        private boolean frameFin;
+        private int frameMaskingKey;
+        private long payloadProgress;
+        private long payloadRemaining;
+        private boolean invalid;
+
+        private int messageOpcode;
+        private long messageSize;
+        private int messageSlot = SLAB_SLOT_NOT_ALLOCATED;
+        private int messageLength;
+        private int utf8State = UTF8_ACCEPT;
 
         private SourceInputStream()
         {
@@ -223,11 +294,10 @@ public final class SourceInputStreamFactory
             long sourceRef,
             String status)
         {
-            final Optional<Route> optional = resolveReplyTo(sourceRef);
+            final Route route = supplyDispatch.apply(sourceRef).replyTo();
 
-            if (optional.isPresent())
+            if (route != null)
             {
-                final Route route = optional.get();
                 final Target replyTo = route.target();
                 final long targetRef = route.targetRef();
                 final long newTargetId = supplyTargetId.getAsLong();
@@ -257,51 +327,47 @@ public final class SourceInputStreamFactory
             final long correlationId = begin.correlationId();
             final OctetsFW extension = begin.extension();
 
-            // TODO: need lightweight approach (start)
-            final HttpBeginExFW httpBeginEx = extension.get(httpBeginExRO::wrap);
-            final Map<String, String> headers = new LinkedHashMap<>();
-            httpBeginEx.headers().forEach(header ->
-            {
-                final String name = header.name().asString();
-                final String value = header.value().asString();
-                headers.merge(name, value, (v1, v2) -> String.format("%s, %s", v1, v2));
-            });
-
-            final String version = headers.get("sec-websocket-version");
-            final String key = headers.get("sec-websocket-key");
-            final String protocols = headers.get("sec-websocket-protocol");
-            // TODO: need lightweight approach (end)
+            final HttpBeginExFW httpBeginEx = extension.get(wrapHttpBeginEx);
+            final HandshakeHeaders handshake = handshakeRO.wrap(httpBeginEx.headers());
 
-            if (key != null && WEBSOCKET_VERSION_13.equals(version))
+            if (handshake.valid())
             {
-                final Optional<Route> optional = resolveTarget(sourceRef, protocols);
+                final RouteDispatch dispatch = supplyDispatch.apply(sourceRef);
+                final Route negotiated = handshake.negotiate(dispatch);
+                final Route route = negotiated != null ? negotiated :
+                        handshake.hasProtocols() ? dispatch.fallbackRoute() : dispatch.defaultRoute();
 
-                if (optional.isPresent())
+                if (route != null)
                 {
                     final long newTargetId = supplyTargetId.getAsLong();
                     final long targetCorrelationId = newTargetId;
 
-                    sha1.reset();
-                    sha1.update(key.getBytes(US_ASCII));
-                    final byte[] digest = sha1.digest(HANDSHAKE_GUID);
-                    final Encoder encoder = Base64.getEncoder();
-                    final String handshakeHash = new String(encoder.encode(digest), US_ASCII);
+                    final DirectBuffer key = handshake.key();
+                    handshakeHash.encode(key, 0, key.capacity(), handshakeHashRW, 0);
 
-                    final Route route = optional.get();
                     final Target newTarget = route.target();
                     final long targetRef = route.targetRef();
-                    final String protocol = resolveProtocol(protocols, route.protocol());
+                    final String protocol = negotiated != null ? negotiated.protocol() : null;
 
-                    final Correlation correlation =
-                            new Correlation(correlationId, source.routableName(), OUTPUT_ESTABLISHED, handshakeHash, protocol);
+                    final Correlation correlation = correlationRW.set(correlationId, source.routableName(),
+                            OUTPUT_ESTABLISHED, handshakeHashRW, protocol);
 
                     correlateNew.accept(targetCorrelationId, correlation);
 
-                    newTarget.doWsBegin(newTargetId, targetRef, targetCorrelationId, protocol);
-                    newTarget.addThrottle(newTargetId, this::handleThrottle);
+                    newTarget.doWsBegin(newTargetId, targetRef, targetCorrelationId,
+                            negotiated != null ? handshake.protocol() : null);
+                    newTarget.addThrottle(newTargetId, handleThrottle);
+                    replies.put(targetCorrelationId, onReply);
+                    handshakes.put(targetCorrelationId, onHandshakeExpired);
+
+                    if (keepalives != null)
+                    {
+                        keepalives.start(newTargetId, onKeepalive);
+                    }
 
                     this.sourceId = newSourceId;
 
+                    this.route = route;
                     this.target = newTarget;
                     this.targetId = newTargetId;
                 }
@@ -315,7 +381,7 @@ public final class SourceInputStreamFactory
                 processInvalidRequest(buffer, index, length, sourceRef, "404");
             }
 
-            this.streamState = this::afterBeginOrData;
+            this.streamState = afterBeginOrData;
         }
 
         private void processData(
@@ -325,17 +391,21 @@ public final class SourceInputStreamFactory
         {
             final DataFW data = dataRO.wrap(buffer, index, index + length);
 
-            OctetsFW payload = data.payload();
-            if(this.slabSlotLimit != 0)
+            this.inboundSinceKeepalive = true;
+
+            final OctetsFW payload = data.payload();
+            this.sourceWindow -= payload.sizeof();
+
+            if (sourceWindow < 0L)
             {
-                MutableDirectBuffer slabBuffer = slab.buffer(this.slabSlot, this.slabSlotOffset);
-                slabBuffer.putBytes(this.slabSlotLimit, payload.buffer(), payload.offset(), payload.sizeof());
-                this.slabSlotLimit += data.length();
-                payload = octetsRO.wrap(slabBuffer, 0, slabSlotLimit);
+                route.sourceOverruns().increment();
+            }
+            else if (sourceWindow == 0L)
+            {
+                route.sourceStalls().increment();
             }
 
-            long streamId = data.streamId();
-            processPayload(payload, streamId);
+            processPayload(payload.buffer(), payload.offset(), payload.limit());
         }
 
         private void processEnd(
@@ -347,113 +417,572 @@ public final class SourceInputStreamFactory
             final long streamId = endRO.streamId();
 
             target.doWsEnd(targetId, STATUS_NORMAL_CLOSURE);
+            releaseMessage();
+            releaseSlot();
 
             this.streamState = this::afterEnd;
 
             source.removeStream(streamId);
             target.removeThrottle(targetId);
+            replies.remove(targetId);
+            releaseHandshake();
+            stopKeepalive();
+        }
+
+        private void onReply(
+            ReplyStream reply)
+        {
+            this.reply = reply;
+            handshakes.remove(targetId);
+        }
+
+        // the request is answered with 504, so the application stream is ended and the source aborted
+        private void onHandshakeExpired()
+        {
+            processAbort(STATUS_GOING_AWAY);
+        }
+
+        // idle means no inbound traffic for one to two intervals, avoiding a timer update on every frame
+        private void onKeepalive()
+        {
+            if (pongPending)
+            {
+                // the connection is presumed half-open, so abort it rather than await a closing handshake
+                processAbort(STATUS_GOING_AWAY);
+            }
+            else if (inboundSinceKeepalive || reply == null)
+            {
+                this.inboundSinceKeepalive = false;
+                keepalives.awaitIdle(targetId);
+            }
+            else
+            {
+                reply.doPing();
+                this.pongPending = true;
+                keepalives.awaitPong(targetId);
+            }
+        }
+
+        private void processAbort(
+            short status)
+        {
+            releaseMessage();
+            releaseSlot();
+            target.doWsEnd(targetId, status);
+            target.removeThrottle(targetId);
+            replies.remove(targetId);
+            releaseHandshake();
+            stopKeepalive();
+
+            if (reply != null)
+            {
+                reply.doAbort(status);
+            }
+
+            source.doReset(sourceId);
+
+            this.streamState = this::afterReplyOrReset;
+        }
+
+        // a handshake not yet answered is forgotten, so its correlation neither expires with a 504 nor takes a late reply
+        private void releaseHandshake()
+        {
+            if (handshakes.remove(targetId) != null)
+            {
+                correlateEstablished.apply(targetId);
+            }
         }
 
-        private int processPayload(
-            final OctetsFW httpPayload,
-            final long streamId)
+        private void stopKeepalive()
         {
-            final DirectBuffer buffer = httpPayload.buffer();
-            final int offset = httpPayload.offset();
-            final int limit = httpPayload.limit();
+            if (keepalives != null)
+            {
+                keepalives.stop(targetId);
+            }
+        }
+
+        // payload is forwarded as it arrives, so only an incomplete header or control frame is ever buffered
+        private void processPayload(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            int progress = offset;
+
+            if (slabSlot != SLAB_SLOT_NOT_ALLOCATED)
+            {
+                progress = processBufferedFrame(buffer, progress, limit);
+            }
 
-            int bytesWritten = 0;
-            int nextOffset = offset;
-            for (; nextOffset < limit; nextOffset = wsFrameRO.limit())
+            while (progress < limit && !invalid)
             {
-                if(wsFrameRO.canWrap(buffer, nextOffset, limit))
+                if (payloadRemaining != 0)
                 {
-                    wsFrameRO.wrap(buffer, nextOffset, limit);
-                    if (wsFrameRO.mask() && wsFrameRO.maskingKey() != 0L)
+                    progress = processPayloadChunk(buffer, progress, limit);
+                }
+                else
+                {
+                    final int length = decodeFrame(buffer, progress, limit);
+
+                    if (length == 0)
                     {
-                            bytesWritten = processFrame(bytesWritten);
+                        this.slabSlot = slab.acquire(sourceId, limit - progress);
+
+                        if (slabSlot == Slab.NO_SLOT)
+                        {
+                            // neither memory nor any overflow tier has room for even a partial header
+                            processInvalidFrame(STATUS_UNEXPECTED_CONDITION);
+                        }
+                        else
+                        {
+                            progress = bufferFrame(buffer, progress, limit, limit - progress);
+                        }
                     }
                     else
                     {
-                        target.doWsEnd(targetId, STATUS_PROTOCOL_ERROR);
+                        progress += length;
                     }
                 }
+            }
+        }
+
+        private int processBufferedFrame(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            // copy no more than needed for the header, and for the payload of a control frame
+            int progress = bufferFrame(buffer, offset, limit, HEADER_SIZE_MINIMUM);
+
+            if (!invalid && slabSlotLimit >= HEADER_SIZE_MINIMUM)
+            {
+                progress = bufferFrame(buffer, progress, limit, WsFrameFW.headerLength(slab.buffer(slabSlot), 0));
+
+                if (!invalid && wsFrameRO.canWrapHeader(slab.buffer(slabSlot), 0, slabSlotLimit))
+                {
+                    wsFrameRO.wrapHeader(slab.buffer(slabSlot), 0, slabSlotLimit);
+
+                    if (wsFrameRO.opcode() >= 8 && wsFrameRO.payloadLength() <= CONTROL_PAYLOAD_LENGTH_MAXIMUM)
+                    {
+                        progress = bufferFrame(buffer, progress, limit, wsFrameRO.sizeof());
+                    }
+                }
+            }
+
+            if (!invalid && decodeFrame(slab.buffer(slabSlot), 0, slabSlotLimit) != 0)
+            {
+                releaseSlot();
+            }
+
+            return progress;
+        }
+
+        private int bufferFrame(
+            DirectBuffer buffer,
+            int offset,
+            int limit,
+            int required)
+        {
+            final int length = Math.max(Math.min(required - slabSlotLimit, limit - offset), 0);
+
+            // a control frame may outgrow a slot sized for a header, so moves to a slot of a larger size class
+            if (slabSlotLimit + length > slab.capacity(slabSlot))
+            {
+                final int newSlot = slab.grow(sourceId, slabSlot, slabSlotLimit, slabSlotLimit + length);
+
+                if (newSlot == Slab.NO_SLOT)
+                {
+                    processInvalidFrame(STATUS_UNEXPECTED_CONDITION);
+                    return limit;
+                }
+
+                this.slabSlot = newSlot;
+            }
+
+            slab.write(slabSlot, slabSlotLimit, buffer, offset, length);
+            this.slabSlotLimit += length;
+
+            return offset + length;
+        }
+
+        /**
+         * @return The number of bytes consumed, the header of a data frame with any payload that followed it,
+         *         or the whole of a control frame, or zero if more bytes are needed
+         */
+        private int decodeFrame(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            // an oversized message is rejected as soon as its length is known, so its payload is never buffered
+            if (WsFrameFW.canReadPayloadLength(buffer, offset, limit) && exceedsMaximumMessageSize(buffer, offset))
+            {
+                processMessageTooLarge();
+                return limit - offset;
+            }
+
+            if (!wsFrameRO.canWrapHeader(buffer, offset, limit))
+            {
+                return 0;
+            }
+
+            wsFrameRO.wrapHeader(buffer, offset, limit);
+
+            final int opcode = wsFrameRO.opcode();
+            int length = limit - offset;
+
+            if (!wsFrameRO.mask() || wsFrameRO.maskingKey() == 0 || wsFrameRO.payloadLength() < 0L)
+            {
+                processInvalidFrame(STATUS_PROTOCOL_ERROR);
+            }
+            else
+            {
+                switch (opcode)
+                {
+                case 0: // CONTINUATION
+                case 1: // TEXT
+                case 2: // BINARY
+                    length = processDataFrame(buffer, offset, limit);
+                    break;
+                case 8: // CLOSE
+                case 9: // PING
+                case 10: // PONG
+                    length = processControlFrame(buffer, offset, limit);
+                    break;
+                default:
+                    processInvalidFrame(STATUS_PROTOCOL_ERROR);
+                    break;
+                }
+            }
+
+            return length;
+        }
+
+        private int processDataFrame(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final int opcode = wsFrameRO.opcode();
+            final int headerLength = wsFrameRO.headerLength();
+
+            if ((opcode == 0) != (messageOpcode != 0))
+            {
+                // continuation outside a fragmented message, or new message inside one
+                processInvalidFrame(STATUS_PROTOCOL_ERROR);
+                return limit - offset;
+            }
+
+            final long payloadLength = wsFrameRO.payloadLength();
+            final long messageSize = (opcode == 0 ? this.messageSize : 0L) + payloadLength;
+
+            this.frameOpcode = opcode;
+            this.frameFin = wsFrameRO.fin();
+            this.frameMaskingKey = wsFrameRO.maskingKey();
+            this.payloadRemaining = payloadLength;
+            this.payloadProgress = 0L;
+            this.messageSize = frameFin ? 0L : messageSize;
+
+            if (payloadLength == 0L)
+            {
+                // uses none of the window from the target, so would otherwise never be credited
+                doSourceWindow(headerLength);
+            }
+            else
+            {
+                this.framingCredit += headerLength;
+            }
+
+            return processPayloadChunk(buffer, offset + headerLength, limit) - offset;
+        }
+
+        private boolean exceedsMaximumMessageSize(
+            DirectBuffer buffer,
+            int offset)
+        {
+            final int opcode = WsFrameFW.opcode(buffer, offset);
+            final long payloadLength = WsFrameFW.payloadLength(buffer, offset);
+
+            return opcode <= 2 && (opcode == 0 ? messageSize : 0L) + payloadLength > maximumMessageSize;
+        }
+
+        private int processPayloadChunk(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            // larger frames are split into as many chunks as fit in the target streams buffer
+            final int length = (int) Math.min(payloadRemaining, Math.min(limit - offset, target.maximumWsDataLength()));
+
+            // an empty frame is still delivered, but never an empty chunk of a non-empty frame
+            if (length != 0 || payloadProgress == 0L && payloadRemaining == 0L)
+            {
+                final boolean first = payloadProgress == 0L;
+                final int maskingKey = maskAt(frameMaskingKey, (int) payloadProgress);
+
+                payloadRO.wrap(buffer, offset, length);
+                this.payloadProgress += length;
+                this.payloadRemaining -= length;
+
+                processDataChunk(first, payloadRemaining == 0L, maskingKey, payloadRO);
+            }
+
+            return offset + length;
+        }
+
+        private void processDataChunk(
+            boolean first,
+            boolean last,
+            int maskingKey,
+            DirectBuffer payload)
+        {
+            final int opcode = frameOpcode;
+            final boolean fin = frameFin && last;
+            final boolean text = validateUtf8 && (opcode == 1 || opcode == 0 && messageOpcode == 1);
+
+            if (reassemblySlab == null)
+            {
+                // chunks after the first are flagged as continuations, so each frame is delivered as fragments
+                final int flags = (fin ? 0x80 : 0x00) | (first ? opcode : 0x00);
+
+                if (text)
+                {
+                    processText(flags, maskingKey, payload);
+                }
+                else if (!target.doWsData(targetId, flags, maskingKey, payload))
+                {
+                    processTargetFull();
+                }
+
+                if (last && !invalid)
+                {
+                    this.messageOpcode = frameFin ? 0 : messageOpcode | opcode;
+                }
+            }
+            else if (first && fin && opcode != 0)
+            {
+                if (text)
+                {
+                    processText(0x80 | opcode, maskingKey, payload);
+                }
+                else if (!target.doWsData(targetId, 0x80 | opcode, maskingKey, payload))
+                {
+                    processTargetFull();
+                }
+            }
+            else
+            {
+                processFragment(first && opcode != 0, fin, maskingKey, payload);
+            }
+        }
+
+        private void processFragment(
+            boolean start,
+            boolean fin,
+            int maskingKey,
+            DirectBuffer payload)
+        {
+            if (start)
+            {
+                this.messageSlot = reassemblySlab.acquire(sourceId);
+                this.messageOpcode = frameOpcode;
+                this.messageLength = 0;
+            }
+
+            final int length = payload.capacity();
+
+            if (messageSlot == Slab.NO_SLOT)
+            {
+                processInvalidFrame(STATUS_UNEXPECTED_CONDITION);
+            }
+            else
+            {
+                final MutableDirectBuffer message = reassemblySlab.buffer(messageSlot);
+                if (messageLength + length > message.capacity())
+                {
+                    processMessageTooLarge();
+                }
                 else
                 {
-                    if(this.slabSlot == SLAB_SLOT_NOT_ALLOCATED)
+                    if (validateUtf8 && messageOpcode == 1)
                     {
-                        // if not in SLAB already, then add to SLAB
-                        this.slabSlot = slab.acquire(streamId);
-                        MutableDirectBuffer slabBuffer = slab.buffer(slabSlot);
-                        slabBuffer.putBytes(0, buffer, nextOffset, limit);
-                        this.slabSlotLimit = limit - nextOffset;
+                        this.utf8State = xorAndValidate(payload, 0, message, messageLength, length, maskingKey, utf8State);
                     }
                     else
                     {
-                        this.slabSlotOffset = nextOffset;
+                        xor(payload, 0, message, messageLength, length, maskingKey);
+                    }
+                    this.messageLength += length;
+
+                    if (utf8State == UTF8_REJECT || fin && utf8State != UTF8_ACCEPT)
+                    {
+                        processInvalidFrame(STATUS_INVALID_UTF8);
+                    }
+                    else if (fin)
+                    {
+                        messageRO.wrap(message, 0, messageLength);
+                        if (target.doWsData(targetId, 0x80 | messageOpcode, 0, messageRO))
+                        {
+                            releaseMessage();
+                        }
+                        else
+                        {
+                            processTargetFull();
+                        }
                     }
-                    break;
                 }
             }
+        }
+
+        // validates while unmasking, so invalid text never reaches the application
+        private void processText(
+            int flags,
+            int maskingKey,
+            DirectBuffer payload)
+        {
+            final int state = target.doWsText(targetId, flags, maskingKey, payload, utf8State);
 
-            if(nextOffset == limit && this.slabSlot != SLAB_SLOT_NOT_ALLOCATED)
+            if (state == UTF8_REJECT)
             {
-                slab.release(this.slabSlot);
-                this.slabSlotOffset = 0;
-                this.slabSlot = SLAB_SLOT_NOT_ALLOCATED;
+                processInvalidFrame(STATUS_INVALID_UTF8);
+            }
+            else if (state == INSUFFICIENT_CAPACITY)
+            {
+                processTargetFull();
+            }
+            else
+            {
+                this.utf8State = state;
             }
-
-            return bytesWritten;
         }
 
-        private int processFrame(int bytesWritten)
+        private int processControlFrame(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
         {
+            if (!wsFrameRO.fin() || wsFrameRO.payloadLength() > CONTROL_PAYLOAD_LENGTH_MAXIMUM)
+            {
+                processInvalidFrame(STATUS_PROTOCOL_ERROR);
+                return limit - offset;
+            }
+
+            if (!wsFrameRO.canWrap(buffer, offset, limit))
+            {
+                return 0;
+            }
+
+            wsFrameRO.wrap(buffer, offset, limit);
+
+            final int opcode = wsFrameRO.opcode();
             final int maskingKey = wsFrameRO.maskingKey();
             final DirectBuffer payload = wsFrameRO.payload();
 
-            switch (wsFrameRO.opcode())
+            if (opcode == 8)
             {
-            case 1: // TEXT
-                bytesWritten += target.doWsData(targetId, 0x81, maskingKey, payload);
-                break;
-            case 2: // BINARY
-                bytesWritten += target.doWsData(targetId, 0x82, maskingKey, payload);
-                break;
-            case 8: // CLOSE
                 final short status = payload.capacity() >=
                     SIZE_OF_SHORT ? payload.getShort(0) : STATUS_NORMAL_CLOSURE;
                 target.doWsEnd(targetId, status);
-                break;
-            default:
-                throw new IllegalStateException("not yet implemented");
             }
-            return bytesWritten;
+            else
+            {
+                processPingOrPong(opcode, maskingKey, payload);
+            }
+
+            return wsFrameRO.sizeof();
         }
 
-        private Optional<Route> resolveTarget(
-            long sourceRef,
-            String protocols)
+        private void processPingOrPong(
+            int opcode,
+            int maskingKey,
+            DirectBuffer payload)
         {
-            final List<Route> routes = supplyRoutes.apply(sourceRef);
-            final Predicate<Route> predicate = protocolMatches(protocols);
+            if (opcode == 9)
+            {
+                route.pings().increment();
+
+                // before the handshake response, there is no reply stream to answer on
+                if (reply != null)
+                {
+                    reply.doPong(maskingKey, payload);
+                }
+            }
+            else
+            {
+                route.pongs().increment();
+                this.pongPending = false;
+            }
 
-            return routes.stream().filter(predicate).findFirst();
+            // consumed here, so never covered by a window from the application
+            doSourceWindow(wsFrameRO.sizeof());
         }
 
-        private String resolveProtocol(
-            final String protocols,
-            final String protocol)
+        // the rest of the message is not drained, but refused by resetting the source
+        private void processMessageTooLarge()
         {
-            return (protocols != null) && protocols.contains(protocol) ? protocol : null;
+            route.messagesTooLarge().increment();
+
+            if (reply != null)
+            {
+                reply.doClose(STATUS_MESSAGE_TOO_LARGE);
+            }
+
+            processInvalidFrame(STATUS_MESSAGE_TOO_LARGE);
+            source.doReset(sourceId);
         }
 
-        private Optional<Route> resolveReplyTo(
-            long sourceRef)
+        // the application cannot take the frame now, so the connection fails rather than losing data unnoticed
+        private void processTargetFull()
         {
-            final List<Route> routes = supplyRoutes.apply(sourceRef);
-            final Predicate<Route> predicate = Route.sourceMatches(source.routableName());
+            if (reply != null)
+            {
+                reply.doClose(STATUS_UNEXPECTED_CONDITION);
+            }
 
-            return routes.stream().filter(predicate).findFirst();
+            processInvalidFrame(STATUS_UNEXPECTED_CONDITION);
+            source.doReset(sourceId);
+        }
+
+        // the target stream is ended, so any further frames from the source are drained without decoding
+        private void processInvalidFrame(
+            short status)
+        {
+            releaseMessage();
+            releaseSlot();
+            target.doWsEnd(targetId, status);
+            target.removeThrottle(targetId);
+            replies.remove(targetId);
+            releaseHandshake();
+            stopKeepalive();
+
+            this.invalid = true;
+            this.payloadRemaining = 0;
+            this.streamState = this::afterReplyOrReset;
+        }
+
+        private void releaseMessage()
+        {
+            if (messageSlot != SLAB_SLOT_NOT_ALLOCATED)
+            {
+                reassemblySlab.release(messageSlot);
+            }
+
+            this.messageSlot = SLAB_SLOT_NOT_ALLOCATED;
+            this.messageOpcode = 0;
+            this.messageLength = 0;
+            this.messageSize = 0L;
+            this.utf8State = UTF8_ACCEPT;
+        }
+
+        private void releaseSlot()
+        {
+            if (slabSlot != SLAB_SLOT_NOT_ALLOCATED)
+            {
+                slab.release(slabSlot);
+            }
+
+            this.slabSlot = SLAB_SLOT_NOT_ALLOCATED;
+            this.slabSlotLimit = 0;
         }
 
         private void handleThrottle(
@@ -485,7 +1014,15 @@ public final class SourceInputStreamFactory
 
             final int update = windowRO.update();
 
-            source.doWindow(sourceId, update + headerSize(update));
+            doSourceWindow(update + framingCredit);
+            this.framingCredit = 0;
+        }
+
+        private void doSourceWindow(
+            int credit)
+        {
+            this.sourceWindow += credit;
+            source.doWindow(sourceId, credit);
         }
 
         private void processReset(
@@ -496,54 +1033,11 @@ public final class SourceInputStreamFactory
             resetRO.wrap(buffer, index, index + length);
 
             source.doReset(sourceId);
-        }
-    }
-
-    private static int headerSize(
-        int payloadSize)
-    {
-        switch (highestOneBit(payloadSize))
-        {
-        case 0:
-        case 1:
-        case 2:
-        case 4:
-        case 8:
-        case 16:
-        case 32:
-            return HEADER_SIZE_PAYLOAD_8_WITH_MASKING_KEY;
-        case 64:
-            return headerSize64to127(payloadSize);
-        case 128:
-            return HEADER_SIZE_EXTENDED_PAYLOAD_16_WITH_MASKING_KEY;
-        default:
-            return HEADER_SIZE_EXTENDED_PAYLOAD_64_WITH_MASKING_KEY;
-        }
-    }
-
-    private static int headerSize64to127(
-        int payloadSize)
-    {
-        switch (payloadSize)
-        {
-        case 126:
-        case 127:
-            return HEADER_SIZE_EXTENDED_PAYLOAD_16_WITH_MASKING_KEY;
-        default:
-            return HEADER_SIZE_PAYLOAD_8_WITH_MASKING_KEY;
-        }
-    }
-
-    private static MessageDigest initSHA1()
-    {
-        try
-        {
-            return MessageDigest.getInstance("SHA-1");
-        }
-        catch (Exception ex)
-        {
-            LangUtil.rethrowUnchecked(ex);
-            return null;
+            releaseMessage();
+            releaseSlot();
+            replies.remove(targetId);
+            releaseHandshake();
+            stopKeepalive();
         }
     }
 }
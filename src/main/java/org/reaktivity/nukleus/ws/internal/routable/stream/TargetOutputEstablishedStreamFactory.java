@@ -15,6 +15,13 @@
  */
 package org.reaktivity.nukleus.ws.internal.routable.stream;
 
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static org.agrona.BitUtil.SIZE_OF_BYTE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_SHORT;
+import static org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW.STATUS_UNEXPECTED_CONDITION;
+import static org.reaktivity.nukleus.ws.internal.util.BufferUtil.xor;
+
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.LongFunction;
@@ -22,13 +29,14 @@ import java.util.function.LongSupplier;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
 import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
 import org.reaktivity.nukleus.ws.internal.routable.Source;
 import org.reaktivity.nukleus.ws.internal.routable.Target;
 import org.reaktivity.nukleus.ws.internal.router.Correlation;
-import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
-import org.reaktivity.nukleus.ws.internal.types.ListFW;
 import org.reaktivity.nukleus.ws.internal.types.OctetsFW;
+import org.reaktivity.nukleus.ws.internal.types.StringFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.DataFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.EndFW;
@@ -37,10 +45,18 @@ import org.reaktivity.nukleus.ws.internal.types.stream.ResetFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.WindowFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.WsBeginExFW;
 import org.reaktivity.nukleus.ws.internal.types.stream.WsDataExFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.WsFrameFW;
 
 public final class TargetOutputEstablishedStreamFactory
 {
-    private static final int ENCODE_OVERHEAD_MAXIMUM = 14;
+    // a DataFW payload is at most 65535 bytes, so never needs a 64-bit extended payload length
+    private static final int ENCODE_OVERHEAD_MAXIMUM = WsFrameFW.headerLength(0xffff);
+
+    // each message awaiting credit is queued as its flags and payload length, followed by its payload
+    private static final int PENDING_HEADER_LENGTH = SIZE_OF_BYTE + SIZE_OF_INT;
+    private static final int NO_FRAME = -1;
+
+    private static final int CONTROL_PAYLOAD_LENGTH_MAXIMUM = 125;
 
     private final FrameFW frameRO = new FrameFW();
 
@@ -54,21 +70,37 @@ public final class TargetOutputEstablishedStreamFactory
     private final WsBeginExFW wsBeginExRO = new WsBeginExFW();
     private final WsDataExFW wsDataExRO = new WsDataExFW();
 
+    private final OctetsFW fragmentRO = new OctetsFW();
+    private final MutableDirectBuffer controlPayloadRW = new UnsafeBuffer(new byte[CONTROL_PAYLOAD_LENGTH_MAXIMUM]);
+
+    private final HandshakeResponse handshakeResponse = new HandshakeResponse();
+
     private final Source source;
     private final Function<String, Target> supplyTarget;
     private final LongSupplier supplyStreamId;
     private final LongFunction<Correlation> correlateEstablished;
-
+    private final Slab slab;
+    private final Long2ObjectHashMap<Consumer<ReplyStream>> replies;
+
+    /**
+     * @param slab - slots for the remainder of messages that do not yet fit the window of the http target
+     * @param replies - handlers of request streams awaiting their reply stream, by target correlation id,
+     *                  told the reply stream once established, then {@code null} once ended
+     */
     public TargetOutputEstablishedStreamFactory(
         Source source,
         Function<String, Target> supplyTarget,
         LongSupplier supplyStreamId,
-        LongFunction<Correlation> correlateEstablished)
+        LongFunction<Correlation> correlateEstablished,
+        Slab slab,
+        Long2ObjectHashMap<Consumer<ReplyStream>> replies)
     {
         this.source = source;
         this.supplyTarget = supplyTarget;
         this.supplyStreamId = supplyStreamId;
         this.correlateEstablished = correlateEstablished;
+        this.slab = slab;
+        this.replies = replies;
     }
 
     public MessageHandler newStream()
@@ -76,7 +108,7 @@ public final class TargetOutputEstablishedStreamFactory
         return new TargetOutputEstablishedStream()::handleStream;
     }
 
-    private final class TargetOutputEstablishedStream
+    private final class TargetOutputEstablishedStream implements ReplyStream
     {
         private MessageHandler streamState;
 
@@ -85,6 +117,26 @@ public final class TargetOutputEstablishedStreamFactory
         private Target target;
         private long targetId;
 
+        private Consumer<ReplyStream> request;
+
+        // credit from the http target not yet used by encoded frames, and credit granted to the application not yet
+        // used, each frame of which is backed by enough of the http window for the largest header it could need
+        private long httpWindow;
+        private long httpFrames;
+        private long wsWindow;
+        private int wsFrames;
+
+        // kilobyte frames are assumed until the application shows how much payload it sends in each frame
+        private int payloadEstimate = 1024 - ENCODE_OVERHEAD_MAXIMUM;
+
+        private int pendingSlot = Slab.NO_SLOT;
+        private int pendingOffset;
+        private int pendingLimit;
+        private boolean endPending;
+
+        private final Runnable onCapacity = this::onCapacity;
+        private boolean capacityAwaited;
+
         private TargetOutputEstablishedStream()
         {
             this.streamState = this::beforeBegin;
@@ -200,16 +252,32 @@ public final class TargetOutputEstablishedStreamFactory
                 final Target newTarget = supplyTarget.apply(correlation.source());
                 final long newTargetId = supplyStreamId.getAsLong();
                 final long sourceCorrelationId = correlation.id();
-                String sourceHash = correlation.hash();
-                String protocol = correlation.protocol();
 
-                newTarget.doHttpBegin(newTargetId, 0L, sourceCorrelationId, setHttpHeaders(sourceHash, protocol));
+                final HandshakeResponse response = handshakeResponse.wrap(correlation.hash());
+                final OctetsFW extension = begin.extension();
+                final StringFW wsProtocol = extension.sizeof() > 0 ? extension.get(wsBeginExRO::wrap).protocol() : null;
+                if (wsProtocol != null && wsProtocol.sizeof() > 0)
+                {
+                    response.protocol(wsProtocol.buffer(), wsProtocol.offset() + 1, wsProtocol.sizeof() - 1);
+                }
+                else
+                {
+                    response.protocol(correlation.protocol());
+                }
+
+                newTarget.doHttpBegin(newTargetId, 0L, sourceCorrelationId, response);
                 newTarget.addThrottle(newTargetId, this::handleThrottle);
 
                 this.sourceId = newSourceId;
                 this.target = newTarget;
                 this.targetId = newTargetId;
 
+                this.request = replies.remove(targetCorrelationId);
+                if (request != null)
+                {
+                    request.accept(this);
+                }
+
                 this.streamState = this::afterBeginOrData;
             }
             else
@@ -233,49 +301,265 @@ public final class TargetOutputEstablishedStreamFactory
                 flags = wsDataEx.flags();
             }
 
-            target.doHttpData(targetId, dataRO.payload(), flags);
+            final OctetsFW payload = dataRO.payload();
+            final int payloadLength = payload.sizeof();
+
+            this.wsWindow -= payloadLength;
+            this.wsFrames = Math.max(wsFrames - 1, 0);
+            this.payloadEstimate += (payloadLength - payloadEstimate) >> 3;
+
+            if (doHttpMessage(flags, payload.buffer(), payload.offset(), payloadLength) && wsFrames == 0)
+            {
+                // the header reserve not needed is otherwise credited with the next window from the http target
+                grantWsWindow();
+            }
         }
 
-        private void processEnd(
+        @Override
+        public void doPing()
+        {
+            doHttpMessage(0x89, controlPayloadRW, 0, 0);
+        }
+
+        @Override
+        public void doPong(
+            int maskKey,
+            DirectBuffer payload)
+        {
+            final int length = xor(payload, 0, controlPayloadRW, 0, payload.capacity(), maskKey);
+            doHttpMessage(0x8a, controlPayloadRW, 0, length);
+        }
+
+        @Override
+        public void doClose(
+            short status)
+        {
+            controlPayloadRW.putShort(0, status, BIG_ENDIAN);
+            doHttpMessage(0x88, controlPayloadRW, 0, SIZE_OF_SHORT);
+        }
+
+        /**
+         * Writes a message as far as the http window allows, queueing the rest behind any message already awaiting
+         * credit, so messages are never reordered
+         * @return {@code true} if the whole message was written
+         */
+        private boolean doHttpMessage(
+            int flags,
             DirectBuffer buffer,
-            int index,
+            int offset,
             int length)
         {
-            endRO.wrap(buffer, index, index + length);
+            final int written = pendingSlot == Slab.NO_SLOT ? doHttpFrames(flags, buffer, offset, length) : NO_FRAME;
 
-            target.doHttpEnd(targetId);
-            target.removeThrottle(targetId);
-            source.removeStream(sourceId);
+            if (written < length)
+            {
+                queuePending(flags, written, buffer, offset, length);
+            }
+
+            return written == length;
+        }
+
+        /**
+         * Writes a message as one frame if it fits both the http window and the streams buffer, or else as many
+         * fragments as fit, the first with the opcode, the rest as continuations, and only the last with any FIN bit
+         * @return The length of payload written, or NO_FRAME if not even an empty first fragment fits
+         */
+        private int doHttpFrames(
+            int flags,
+            DirectBuffer buffer,
+            int offset,
+            int length)
+        {
+            final int opcode = flags & 0x0f;
+            int progress = NO_FRAME;
+
+            while (progress < length)
+            {
+                final int written = Math.max(progress, 0);
+                final int fragmentLength = fragmentLength(length - written);
+                final boolean last = fragmentLength == length - written;
+
+                // control frames must not be fragmented, and an empty fragment would be of no use
+                if (fragmentLength < 0 || !last && (fragmentLength == 0 || opcode >= 8))
+                {
+                    break;
+                }
+
+                final int fragmentFlags = (last ? flags & 0x80 : 0x00) | (written == 0 ? opcode : 0x00);
+                fragmentRO.wrap(buffer, offset + written, offset + written + fragmentLength);
+
+                if (!target.doHttpData(targetId, fragmentRO, fragmentFlags))
+                {
+                    awaitCapacity();
+                    break;
+                }
+
+                this.httpWindow -= fragmentLength + WsFrameFW.headerLength(fragmentLength);
+                this.httpFrames--;
+
+                progress = written + fragmentLength;
+
+                if (last)
+                {
+                    break;
+                }
+            }
+
+            return progress;
+        }
+
+        /**
+         * @return The largest payload, up to the given length, whose frame fits both the http window and one message
+         *         in the streams buffer, or a negative value if not even an empty frame fits
+         */
+        private int fragmentLength(
+            int length)
+        {
+            // a DataFW payload is at most 65535 bytes, so the frame with its header must fit in that too
+            final long frameLength = Math.min(httpFrames > 0 ? httpWindow : 0L, Math.min(target.maximumWsDataLength(), 0xffff));
+            long fragmentLength = Math.min(length, frameLength - WsFrameFW.headerLength(0));
+
+            if (fragmentLength > 125)
+            {
+                fragmentLength = Math.max(Math.min(fragmentLength, frameLength - WsFrameFW.headerLength(0xffff)), 125);
+            }
+
+            return (int) fragmentLength;
+        }
+
+        private void queuePending(
+            int flags,
+            int written,
+            DirectBuffer buffer,
+            int offset,
+            int length)
+        {
+            // the rest of a message already started continues it, keeping its FIN bit
+            final int pendingFlags = written == NO_FRAME ? flags : flags & 0x80;
+            final int remaining = written == NO_FRAME ? length : length - written;
+            final int required = PENDING_HEADER_LENGTH + remaining;
+
+            if (pendingSlot == Slab.NO_SLOT)
+            {
+                this.pendingSlot = slab.acquire(sourceId, required);
+                this.pendingOffset = 0;
+                this.pendingLimit = 0;
+            }
+            else if (pendingLimit + required > slab.capacity(pendingSlot))
+            {
+                final int newSlot = slab.grow(sourceId, pendingSlot, pendingLimit, pendingLimit + required);
+
+                if (newSlot == Slab.NO_SLOT)
+                {
+                    slab.release(pendingSlot);
+                }
+
+                this.pendingSlot = newSlot;
+            }
+
+            if (pendingSlot == Slab.NO_SLOT)
+            {
+                processPendingOverflow();
+            }
+            else
+            {
+                slab.buffer(pendingSlot, pendingLimit).putByte(0, (byte) pendingFlags);
+                slab.buffer(pendingSlot, pendingLimit + SIZE_OF_BYTE).putInt(0, remaining);
+                slab.write(pendingSlot, pendingLimit + PENDING_HEADER_LENGTH, buffer, offset + length - remaining, remaining);
+                this.pendingLimit += required;
+            }
         }
 
-        private Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> setHttpHeaders(
-            String handshakeHash,
-            String protocol)
+        private void flushPending()
         {
-            return headers ->
+            while (pendingSlot != Slab.NO_SLOT)
             {
-                headers.item(h -> h.name(":status").value("101"));
-                headers.item(h -> h.name("upgrade").value("websocket"));
-                headers.item(h -> h.name("connection").value("upgrade"));
-                headers.item(h -> h.name("sec-websocket-accept").value(handshakeHash));
-
-                // TODO: auto-exclude header if value is null
-                final OctetsFW extension = beginRO.extension();
-                if (extension.sizeof() > 0)
+                final MutableDirectBuffer pending = slab.buffer(pendingSlot);
+                final int flags = pending.getByte(pendingOffset) & 0xff;
+                final int length = pending.getInt(pendingOffset + SIZE_OF_BYTE);
+                final int payloadOffset = pendingOffset + PENDING_HEADER_LENGTH;
+
+                final int written = doHttpFrames(flags, pending, payloadOffset, length);
+
+                if (written < length)
                 {
-                    final WsBeginExFW wsBeginEx = extension.get(wsBeginExRO::wrap);
-                    final String wsProtocol = wsBeginEx.protocol().asString();
-                    final String negotiated = wsProtocol == null ? protocol : wsProtocol;
-                    if (negotiated != null)
+                    if (written > 0)
                     {
-                        headers.item(h -> h.name("sec-websocket-protocol").value(negotiated));
+                        // the rest is queued as a continuation, its header overwriting payload already written
+                        this.pendingOffset += written;
+                        pending.putByte(pendingOffset, (byte) (flags & 0x80));
+                        pending.putInt(pendingOffset + SIZE_OF_BYTE, length - written);
                     }
+                    break;
                 }
-                else if (protocol != null)
+
+                this.pendingOffset = payloadOffset + length;
+
+                if (pendingOffset == pendingLimit)
                 {
-                    headers.item(h -> h.name("sec-websocket-protocol").value(protocol));
+                    releasePending();
                 }
-            };
+            }
+        }
+
+        // nowhere to keep the message, so the application is refused and the client told the server failed
+        private void processPendingOverflow()
+        {
+            doAbort(STATUS_UNEXPECTED_CONDITION);
+        }
+
+        @Override
+        public void doAbort(
+            short status)
+        {
+            // the close skips any messages awaiting credit, as it cannot be queued behind them
+            releasePending();
+            controlPayloadRW.putShort(0, status, BIG_ENDIAN);
+            doHttpFrames(0x88, controlPayloadRW, 0, SIZE_OF_SHORT);
+            target.doHttpEnd(targetId);
+            target.removeThrottle(targetId);
+            source.doReset(sourceId);
+            releaseRequest();
+
+            this.streamState = this::afterRejectOrReset;
+        }
+
+        private void releasePending()
+        {
+            if (pendingSlot != Slab.NO_SLOT)
+            {
+                slab.release(pendingSlot);
+            }
+
+            this.pendingSlot = Slab.NO_SLOT;
+            this.pendingOffset = 0;
+            this.pendingLimit = 0;
+        }
+
+        private void processEnd(
+            DirectBuffer buffer,
+            int index,
+            int length)
+        {
+            endRO.wrap(buffer, index, index + length);
+
+            // any messages still awaiting credit are written first
+            if (pendingSlot == Slab.NO_SLOT)
+            {
+                doEnd();
+            }
+            else
+            {
+                this.endPending = true;
+            }
+        }
+
+        private void doEnd()
+        {
+            target.doHttpEnd(targetId);
+            target.removeThrottle(targetId);
+            source.removeStream(sourceId);
+            releaseRequest();
         }
 
         private void handleThrottle(
@@ -305,11 +589,65 @@ public final class TargetOutputEstablishedStreamFactory
         {
             windowRO.wrap(buffer, index, index + length);
 
-            final int httpUpdate = windowRO.update();
-            final int wsUpdate = httpUpdate - ENCODE_OVERHEAD_MAXIMUM;
-            if (wsUpdate > 0)
+            this.httpWindow += windowRO.update();
+            this.httpFrames += windowRO.frames();
+
+            flush();
+        }
+
+        private void awaitCapacity()
+        {
+            if (!capacityAwaited)
+            {
+                this.capacityAwaited = true;
+                target.awaitCapacity(onCapacity);
+            }
+        }
+
+        private void onCapacity()
+        {
+            this.capacityAwaited = false;
+
+            // nothing left to retry once the pending messages were written or the stream was released
+            if (pendingSlot != Slab.NO_SLOT)
             {
-                source.doWindow(sourceId, wsUpdate);
+                flush();
+            }
+        }
+
+        private void flush()
+        {
+            flushPending();
+
+            if (pendingSlot == Slab.NO_SLOT)
+            {
+                if (endPending)
+                {
+                    doEnd();
+                }
+                else
+                {
+                    grantWsWindow();
+                }
+            }
+        }
+
+        private void grantWsWindow()
+        {
+            // frames in proportion to the payload the application sends in each, counting those it already holds, so
+            // credit granted before the estimate settled is not left unusable for want of frames
+            final long estimatedFrames = httpWindow / (payloadEstimate + ENCODE_OVERHEAD_MAXIMUM);
+            final long affordableFrames = (httpWindow - wsWindow) / ENCODE_OVERHEAD_MAXIMUM;
+            final long wantedFrames = Math.max(Math.min(Math.max(estimatedFrames, 1L), httpFrames), wsFrames);
+            final long totalFrames = Math.min(wantedFrames, affordableFrames);
+            final long frames = totalFrames - wsFrames;
+            final long update = Math.min(httpWindow - wsWindow - totalFrames * ENCODE_OVERHEAD_MAXIMUM, Integer.MAX_VALUE);
+
+            if (frames >= 0L && update >= 0L && update + frames > 0L)
+            {
+                this.wsWindow += update;
+                this.wsFrames += frames;
+                source.doWindow(sourceId, (int) update, (int) frames);
             }
         }
 
@@ -321,6 +659,17 @@ public final class TargetOutputEstablishedStreamFactory
             resetRO.wrap(buffer, index, index + length);
 
             source.doReset(sourceId);
+            releasePending();
+            releaseRequest();
+        }
+
+        private void releaseRequest()
+        {
+            if (request != null)
+            {
+                request.accept(null);
+                this.request = null;
+            }
         }
     }
 }
@@ -16,29 +16,54 @@
 package org.reaktivity.nukleus.ws.internal.router;
 
 import static java.util.Objects.requireNonNull;
+import static org.reaktivity.nukleus.ws.internal.util.HandshakeHash.HASH_LENGTH;
 
 import java.util.Objects;
 
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
 public class Correlation
 {
-    private final long id;
-    private final String source;
-    private final RouteKind established;
-    private final String hash;
-    private final String protocol;
+    private final MutableDirectBuffer hash = new UnsafeBuffer(new byte[HASH_LENGTH]);
+
+    private long id;
+    private String source;
+    private RouteKind established;
+    private String protocol;
+
+    public Correlation()
+    {
+    }
 
     public Correlation(
         long id,
         String source,
         RouteKind established,
-        String hash,
+        DirectBuffer hash,
+        String protocol)
+    {
+        set(id, source, established, hash, protocol);
+    }
+
+    /**
+     * Sets all fields of this correlation, copying the hash, so that one instance can be reused
+     * @return This correlation
+     */
+    public Correlation set(
+        long id,
+        String source,
+        RouteKind established,
+        DirectBuffer hash,
         String protocol)
     {
         this.id = id;
         this.source = requireNonNull(source, "source");
         this.established = requireNonNull(established, "established");
-        this.hash = hash;
+        this.hash.putBytes(0, requireNonNull(hash, "hash"), 0, HASH_LENGTH);
         this.protocol = protocol;
+        return this;
     }
 
     public long id()
@@ -56,7 +81,7 @@ public class Correlation
         return established;
     }
 
-    public String hash()
+    public DirectBuffer hash()
     {
         return hash;
     }
@@ -72,7 +97,7 @@ public class Correlation
         int result = Long.hashCode(id);
         result = 31 * result + source.hashCode();
         result = 31 * result + established.hashCode();
-        result = 31 * result + protocol.hashCode();
+        result = 31 * result + Objects.hashCode(protocol);
         result = 31 * result + hash.hashCode();
 
         return result;
@@ -99,6 +124,6 @@ public class Correlation
     public String toString()
     {
         return String.format("[id=%d, source=\"%s\", established=%s, protocol=\"%s\" hash=\"%s\"]",
-                id, source, established, protocol, hash);
+                id, source, established, protocol, hash.getStringWithoutLengthUtf8(0, HASH_LENGTH));
     }
 }
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.router;
+
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.isPowerOfTwo;
+import static org.reaktivity.nukleus.ws.internal.util.HandshakeHash.HASH_LENGTH;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Hashing;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+
+/**
+ * A fixed capacity, open addressed table of correlations, stored in a direct buffer so that
+ * in-flight handshakes do not retain any objects. Source names and protocols are interned
+ * to integer indexes, and the accept hash is stored as fixed width bytes.
+ * <p>
+ * Lookups return a reusable {@link Correlation} view, valid only until the next call to this table.
+ * <b>Each instance of this class is assumed to be used by one and only one thread.</b>
+ */
+public final class Correlations
+{
+    private static final int FIELD_OFFSET_KEY = 0;
+    private static final int FIELD_OFFSET_ID = FIELD_OFFSET_KEY + SIZE_OF_LONG;
+    private static final int FIELD_OFFSET_SOURCE = FIELD_OFFSET_ID + SIZE_OF_LONG;
+    private static final int FIELD_OFFSET_PROTOCOL = FIELD_OFFSET_SOURCE + SIZE_OF_INT;
+    private static final int FIELD_OFFSET_ESTABLISHED = FIELD_OFFSET_PROTOCOL + SIZE_OF_INT;
+    private static final int FIELD_OFFSET_HASH = FIELD_OFFSET_ESTABLISHED + SIZE_OF_INT;
+    private static final int FIELD_OFFSET_USED = FIELD_OFFSET_HASH + HASH_LENGTH;
+
+    static final int ENTRY_SIZE = 64;
+
+    private static final int NO_PROTOCOL = -1;
+    private static final int NOT_FOUND = -1;
+
+    private static final RouteKind[] ROUTE_KINDS = RouteKind.values();
+
+    private final Correlation correlationRO = new Correlation();
+    private final MutableDirectBuffer hashRO = new UnsafeBuffer(new byte[0]);
+
+    private final List<String> sources = new ArrayList<>();
+    private final Map<String, Integer> sourceIndexes = new HashMap<>();
+    private final List<String> protocols = new ArrayList<>();
+    private final Map<String, Integer> protocolIndexes = new HashMap<>();
+
+    private final MutableDirectBuffer entries;
+    private final int capacity;
+    private final int mask;
+    private final AtomicCounter active;
+    private final AtomicCounter overflows;
+
+    private int size;
+
+    public Correlations(
+        int capacity,
+        AtomicCounter active,
+        AtomicCounter overflows)
+    {
+        if (!isPowerOfTwo(capacity))
+        {
+            throw new IllegalArgumentException("capacity is not a power of 2");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.entries = new UnsafeBuffer(ByteBuffer.allocateDirect(capacity * ENTRY_SIZE));
+        this.active = active;
+        this.overflows = overflows;
+    }
+
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Stores a correlation, replacing any existing correlation with the same key.
+     * If the table is full the correlation is dropped and the overflow counter incremented,
+     * so that the established stream is later rejected.
+     * @param key - Correlation key
+     * @param correlation - Correlation to copy into the table
+     */
+    public void put(
+        long key,
+        Correlation correlation)
+    {
+        int index = Hashing.hash(key, mask);
+
+        while (used(index) && entryKey(index) != key)
+        {
+            index = ++index & mask;
+            if (index == Hashing.hash(key, mask))
+            {
+                overflows.increment();
+                return;
+            }
+        }
+
+        final int offset = index * ENTRY_SIZE;
+        if (!used(index))
+        {
+            size++;
+            active.set(size);
+        }
+
+        entries.putLong(offset + FIELD_OFFSET_KEY, key);
+        entries.putLong(offset + FIELD_OFFSET_ID, correlation.id());
+        entries.putInt(offset + FIELD_OFFSET_SOURCE, intern(correlation.source(), sources, sourceIndexes));
+        entries.putInt(offset + FIELD_OFFSET_PROTOCOL, internProtocol(correlation.protocol()));
+        entries.putInt(offset + FIELD_OFFSET_ESTABLISHED, correlation.established().ordinal());
+        entries.putBytes(offset + FIELD_OFFSET_HASH, correlation.hash(), 0, HASH_LENGTH);
+        entries.putByte(offset + FIELD_OFFSET_USED, (byte) 1);
+    }
+
+    /**
+     * Gets a correlation without removing it
+     * @param key - Correlation key
+     * @return A reusable view of the correlation, or {@code null} if not found
+     */
+    public Correlation get(
+        long key)
+    {
+        final int index = find(key);
+        return index != NOT_FOUND ? read(index) : null;
+    }
+
+    /**
+     * Removes a correlation
+     * @param key - Correlation key
+     * @return A reusable view of the removed correlation, or {@code null} if not found
+     */
+    public Correlation remove(
+        long key)
+    {
+        Correlation correlation = null;
+
+        final int index = find(key);
+        if (index != NOT_FOUND)
+        {
+            correlation = read(index);
+            delete(index);
+            size--;
+            active.set(size);
+        }
+
+        return correlation;
+    }
+
+    private int find(
+        long key)
+    {
+        int index = Hashing.hash(key, mask);
+
+        for (int probes = 0; probes < capacity && used(index); probes++)
+        {
+            if (entryKey(index) == key)
+            {
+                return index;
+            }
+            index = ++index & mask;
+        }
+
+        return NOT_FOUND;
+    }
+
+    private Correlation read(
+        int index)
+    {
+        final int offset = index * ENTRY_SIZE;
+        final int protocol = entries.getInt(offset + FIELD_OFFSET_PROTOCOL);
+
+        hashRO.wrap(entries, offset + FIELD_OFFSET_HASH, HASH_LENGTH);
+
+        return correlationRO.set(
+                entries.getLong(offset + FIELD_OFFSET_ID),
+                sources.get(entries.getInt(offset + FIELD_OFFSET_SOURCE)),
+                ROUTE_KINDS[entries.getInt(offset + FIELD_OFFSET_ESTABLISHED)],
+                hashRO,
+                protocol != NO_PROTOCOL ? protocols.get(protocol) : null);
+    }
+
+    private void delete(
+        int index)
+    {
+        // backward shift deletion keeps probe sequences intact without tombstones
+        int hole = index;
+        entries.setMemory(hole * ENTRY_SIZE, ENTRY_SIZE, (byte) 0);
+
+        for (int next = (hole + 1) & mask; used(next); next = (next + 1) & mask)
+        {
+            final int home = Hashing.hash(entryKey(next), mask);
+            if (((next - home) & mask) >= ((next - hole) & mask))
+            {
+                entries.putBytes(hole * ENTRY_SIZE, entries, next * ENTRY_SIZE, ENTRY_SIZE);
+                entries.setMemory(next * ENTRY_SIZE, ENTRY_SIZE, (byte) 0);
+                hole = next;
+            }
+        }
+    }
+
+    private boolean used(
+        int index)
+    {
+        return entries.getByte(index * ENTRY_SIZE + FIELD_OFFSET_USED) != 0;
+    }
+
+    private long entryKey(
+        int index)
+    {
+        return entries.getLong(index * ENTRY_SIZE + FIELD_OFFSET_KEY);
+    }
+
+    private int internProtocol(
+        String protocol)
+    {
+        return protocol != null ? intern(protocol, protocols, protocolIndexes) : NO_PROTOCOL;
+    }
+
+    private static int intern(
+        String value,
+        List<String> values,
+        Map<String, Integer> indexes)
+    {
+        Integer index = indexes.get(value);
+        if (index == null)
+        {
+            index = values.size();
+            values.add(value);
+            indexes.put(value, index);
+        }
+        return index;
+    }
+}
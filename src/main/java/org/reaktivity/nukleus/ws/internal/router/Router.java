@@ -15,9 +15,14 @@
  */
 package org.reaktivity.nukleus.ws.internal.router;
 
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,19 +31,36 @@ import org.agrona.concurrent.status.AtomicCounter;
 import org.reaktivity.nukleus.Nukleus;
 import org.reaktivity.nukleus.ws.internal.Context;
 import org.reaktivity.nukleus.ws.internal.conductor.Conductor;
+import org.reaktivity.nukleus.ws.internal.layouts.OverflowLayout;
 import org.reaktivity.nukleus.ws.internal.routable.Routable;
+import org.reaktivity.nukleus.ws.internal.routable.stream.Keepalives;
+import org.reaktivity.nukleus.ws.internal.routable.stream.ReplyStream;
 import org.reaktivity.nukleus.ws.internal.routable.stream.Slab;
 import org.reaktivity.nukleus.ws.internal.types.control.Role;
+import org.reaktivity.nukleus.ws.internal.util.TimerWheel;
 
 public final class Router extends Nukleus.Composite
 {
     private static final Pattern SOURCE_NAME = Pattern.compile("([^#]+).*");
 
+    private static final long HANDSHAKE_TIMER_RESOLUTION_MILLIS = 10L;
+    private static final long KEEPALIVE_TIMER_RESOLUTION_MILLIS = 100L;
+
     private final Context context;
     private final Map<String, Routable> routables;
-    private final Long2ObjectHashMap<Correlation> correlations;
+    private final Correlations correlations;
     private final AtomicCounter routesSourced;
+    private final AtomicCounter handshakesExpired;
+    private final OverflowLayout overflow;
     private final Slab slab;
+    private final Slab pendingSlab;
+    private final Slab reassemblySlab;
+    private final Long2ObjectHashMap<Consumer<ReplyStream>> replies;
+    private final Long2ObjectHashMap<Runnable> handshakes;
+    private final Keepalives keepalives;
+    private final long handshakeTimeout;
+    private final TimerWheel handshakeTimers;
+    private final LongConsumer onHandshakeExpired;
 
     private Conductor conductor;
 
@@ -48,9 +70,56 @@ public final class Router extends Nukleus.Composite
     {
         this.context = context;
         this.routables = new HashMap<>();
-        this.correlations = new Long2ObjectHashMap<>();
+        this.correlations = new Correlations(context.maximumCorrelations,
+                context.counters().correlationsActive(), context.counters().correlationsOverflow());
         this.routesSourced = context.counters().routesSourced();
-        this.slab = new Slab(context.memoryForRepeatRequests, context.maximumRequestSize);
+        this.handshakesExpired = context.counters().handshakesExpired();
+        this.overflow = context.slabOverflowCapacity > 0 ? new OverflowLayout.Builder()
+                .path(context.overflowPath())
+                .capacity(context.slabOverflowCapacity)
+                .build() : null;
+        this.slab = new Slab(context.slabSlotCapacities, context.slabClassMemory, slabCounters(context),
+                overflow != null ? overflow.buffer() : null, context.slabOverflowPageSize,
+                context.counters().counter("slab.overflow.bytes"));
+        this.pendingSlab = new Slab(context.slabSlotCapacities, context.pendingSlabClassMemory,
+                pendingSlabCounters(context));
+        this.reassemblySlab = context.reassembleFragments ?
+                new Slab(context.memoryForReassembly, context.maximumMessageSize) : null;
+        this.replies = new Long2ObjectHashMap<>();
+        this.handshakes = new Long2ObjectHashMap<>();
+        this.keepalives = context.keepaliveIntervalMillis > 0L ? new Keepalives(context.keepaliveIntervalMillis,
+                context.keepaliveTimeoutMillis, KEEPALIVE_TIMER_RESOLUTION_MILLIS, currentTimeMillis()) : null;
+        this.handshakeTimeout = context.handshakeTimeoutMillis;
+        this.handshakeTimers = new TimerWheel(HANDSHAKE_TIMER_RESOLUTION_MILLIS, currentTimeMillis());
+        this.onHandshakeExpired = this::onHandshakeExpired;
+    }
+
+    @Override
+    public int process()
+    {
+        int workCount = super.process();
+
+        final long now = currentTimeMillis();
+
+        workCount += handshakeTimers.expire(now, onHandshakeExpired);
+
+        if (keepalives != null)
+        {
+            workCount += keepalives.expire(now);
+        }
+
+        return workCount;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        super.close();
+
+        if (overflow != null)
+        {
+            overflow.close();
+        }
     }
 
     public void setConductor(Conductor conductor)
@@ -126,6 +195,70 @@ public final class Router extends Nukleus.Composite
         // TODO:
     }
 
+    private void correlateNew(
+        long correlationId,
+        Correlation correlation)
+    {
+        correlations.put(correlationId, correlation);
+
+        if (handshakeTimeout > 0L)
+        {
+            handshakeTimers.schedule(currentTimeMillis() + handshakeTimeout, correlationId);
+        }
+    }
+
+    private void onHandshakeExpired(
+        long correlationId)
+    {
+        final Correlation correlation = correlations.remove(correlationId);
+        final Runnable handshake = handshakes.remove(correlationId);
+        if (correlation != null)
+        {
+            final Routable routable = routables.get(correlation.source());
+            if (routable != null)
+            {
+                routable.doExpireHandshake(correlation.id());
+            }
+
+            if (handshake != null)
+            {
+                handshake.run();
+            }
+
+            handshakesExpired.increment();
+        }
+    }
+
+    private static AtomicCounter[] slabCounters(
+        Context context)
+    {
+        final int[] slotCapacities = context.slabSlotCapacities;
+        final AtomicCounter[] counters = new AtomicCounter[slotCapacities.length + 1];
+        for (int i = 0; i < slotCapacities.length; i++)
+        {
+            counters[i] = context.counters().counter(String.format("slab.%d.acquired", slotCapacities[i]));
+        }
+        counters[slotCapacities.length] = context.counters().counter("slab.overflow.acquired");
+        return counters;
+    }
+
+    private static AtomicCounter[] pendingSlabCounters(
+        Context context)
+    {
+        final int[] slotCapacities = context.slabSlotCapacities;
+        final AtomicCounter[] counters = new AtomicCounter[slotCapacities.length];
+        for (int i = 0; i < slotCapacities.length; i++)
+        {
+            counters[i] = context.counters().counter(String.format("pending.slab.%d.acquired", slotCapacities[i]));
+        }
+        return counters;
+    }
+
+    private static long currentTimeMillis()
+    {
+        return NANOSECONDS.toMillis(nanoTime());
+    }
+
     private static String source(
         Path path)
     {
@@ -144,6 +277,7 @@ public final class Router extends Nukleus.Composite
         String sourceName)
     {
         return include(
-            new Routable(context, conductor, sourceName, correlations::put, correlations::get, correlations::remove, slab));
+            new Routable(context, conductor, sourceName, this::correlateNew, correlations::get, correlations::remove,
+                    slab, pendingSlab, reassemblySlab, replies, handshakes, keepalives));
     }
 }
@@ -72,7 +72,7 @@ public final class WsFrameFW extends Flyweight
         return buffer().getByte(offset() + FIELD_OFFSET_FLAGS_AND_OPCODE) & 0x0f;
     }
 
-    private boolean isMasked(byte b)
+    private static boolean isMasked(byte b)
     {
         return (b & 0x80) != 0;
     }
@@ -92,16 +92,41 @@ public final class WsFrameFW extends Flyweight
         return payloadRO;
     }
 
+    public int headerLength()
+    {
+        return payloadOffset() - offset();
+    }
+
+    /**
+     * @return The payload length, which may exceed the available bytes when only the header is wrapped,
+     *         or be negative if the most significant bit of an 8-byte length is set, as forbidden by RFC 6455
+     */
+    public long payloadLength()
+    {
+        return length();
+    }
+
     @Override
     public int limit()
     {
-        return payloadOffset() + length();
+        return (int) Math.min(payloadOffset() + length(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Determines whether the frame header, up to and including any masking key, is available, regardless of
+     * how much of the payload is available
+     */
+    public boolean canWrapHeader(DirectBuffer buffer, int offset, int maxLimit)
+    {
+        final int maxLength = maxLimit - offset;
+
+        return maxLength > FIELD_OFFSET_MASK_AND_LENGTH && headerLength(buffer, offset) <= maxLength;
     }
 
     public boolean canWrap(DirectBuffer buffer, int offset, int maxLimit)
     {
         int maxLength = maxLimit - offset;
-        int wsFrameLength = 2;
+        long wsFrameLength = 2;
         if(maxLength < wsFrameLength)
         {
            return false;
@@ -131,13 +156,65 @@ public final class WsFrameFW extends Flyweight
     {
         super.wrap(buffer, offset, maxLimit);
 
-        payloadRO.wrap(buffer, payloadOffset(), length());
-
         checkLimit(limit(), maxLimit);
 
+        payloadRO.wrap(buffer, payloadOffset(), (int) length());
+
+        return this;
+    }
+
+    /**
+     * Wraps only the frame header, so the payload may be incomplete and {@link #payload()} is not available
+     */
+    public WsFrameFW wrapHeader(DirectBuffer buffer, int offset, int maxLimit)
+    {
+        super.wrap(buffer, offset, maxLimit);
+
+        checkLimit(payloadOffset(), maxLimit);
+
         return this;
     }
 
+    /**
+     * Determines whether the opcode and payload length are available, even though the masking key may not be
+     */
+    public static boolean canReadPayloadLength(DirectBuffer buffer, int offset, int maxLimit)
+    {
+        final int maxLength = maxLimit - offset;
+
+        return maxLength > FIELD_OFFSET_MASK_AND_LENGTH &&
+                FIELD_SIZE_FLAGS_AND_OPCODE + lengthSize(buffer.getByte(offset + FIELD_OFFSET_MASK_AND_LENGTH)) <= maxLength;
+    }
+
+    public static int opcode(DirectBuffer buffer, int offset)
+    {
+        return buffer.getByte(offset + FIELD_OFFSET_FLAGS_AND_OPCODE) & 0x0f;
+    }
+
+    public static long payloadLength(DirectBuffer buffer, int offset)
+    {
+        return length(buffer, offset);
+    }
+
+    /**
+     * @return The length of the frame header, given at least the first two bytes of the frame
+     */
+    public static int headerLength(DirectBuffer buffer, int offset)
+    {
+        final byte maskAndLength = buffer.getByte(offset + FIELD_OFFSET_MASK_AND_LENGTH);
+        final int maskingKeySize = isMasked(maskAndLength) ? FIELD_SIZE_MASKING_KEY : 0;
+
+        return FIELD_SIZE_FLAGS_AND_OPCODE + lengthSize(maskAndLength) + maskingKeySize;
+    }
+
+    /**
+     * @return The length of the header of an unmasked frame with the given payload length, as encoded by the builder
+     */
+    public static int headerLength(long payloadLength)
+    {
+        return payloadLength < 126 ? 2 : payloadLength <= 0xffff ? 4 : 10;
+    }
+
     @Override
     public String toString()
     {
@@ -161,7 +238,7 @@ public final class WsFrameFW extends Flyweight
         return lengthSize(buffer().getByte(offset() + FIELD_OFFSET_MASK_AND_LENGTH));
     }
 
-    private int length()
+    private long length()
     {
         return length(buffer(), offset());
     }
@@ -249,7 +326,7 @@ public final class WsFrameFW extends Flyweight
         }
     }
 
-    private static int length(DirectBuffer buffer, int offset)
+    private static long length(DirectBuffer buffer, int offset)
     {
         int length = buffer.getByte(offset + FIELD_OFFSET_MASK_AND_LENGTH) & 0x7f;
 
@@ -259,24 +336,13 @@ public final class WsFrameFW extends Flyweight
             return buffer.getShort(offset + FIELD_OFFSET_MASK_AND_LENGTH + 1, ByteOrder.BIG_ENDIAN) & 0xffff;
 
         case 0x7f:
-            long length8bytes = buffer.getLong(offset + FIELD_OFFSET_MASK_AND_LENGTH + 1, ByteOrder.BIG_ENDIAN);
-            validateLength(length8bytes);
-            return (int) length8bytes & 0xffffffff;
+            return buffer.getLong(offset + FIELD_OFFSET_MASK_AND_LENGTH + 1, ByteOrder.BIG_ENDIAN);
 
         default:
             return length;
         }
     }
 
-    private static void validateLength(
-            long length8bytes)
-    {
-        if (length8bytes >> 17L != 0L)
-        {
-            throw new IllegalStateException("frame payload too long");
-        }
-    }
-
     private static int lengthSize(byte b)
     {
         switch (b & 0x7f)
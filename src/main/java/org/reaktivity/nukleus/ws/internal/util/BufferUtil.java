@@ -17,19 +17,28 @@ package org.reaktivity.nukleus.ws.internal.util;
 
 import static java.nio.ByteOrder.BIG_ENDIAN;
 import static java.nio.ByteOrder.nativeOrder;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.SIZE_OF_SHORT;
 
-import org.agrona.BitUtil;
+import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 
 public final class BufferUtil
 {
+    // below this length, the alignment fix-up costs more than the wider loop saves
+    private static final int ALIGNED_THRESHOLD = 256;
+    private static final int UNROLLED_LENGTH = 4 * SIZE_OF_LONG;
+
+    private static final boolean BIG_ENDIAN_NATIVE = nativeOrder() == BIG_ENDIAN;
+
     private static final int REMAINING_SHIFT_1ST_BYTE;
     private static final int REMAINING_SHIFT_1ST_SHORT;
     private static final int REMAINING_SHIFT_3RD_BYTE;
 
     static
     {
-        if (nativeOrder() == BIG_ENDIAN)
+        if (BIG_ENDIAN_NATIVE)
         {
             REMAINING_SHIFT_1ST_BYTE = 24;
             REMAINING_SHIFT_1ST_SHORT = 16;
@@ -48,24 +57,103 @@ public final class BufferUtil
         // utility class, no instances
     }
 
+    /**
+     * Rotates a websocket mask key, read in native byte order, so masking resumes part way through a payload,
+     * as when the payload is unmasked in several chunks
+     * @param progress - the number of payload bytes already unmasked
+     * @return The mask key to apply to the remaining bytes
+     */
+    public static int maskAt(
+        final int bits,
+        final int progress)
+    {
+        final int shift = (progress & 0x03) << 3;
+
+        return BIG_ENDIAN_NATIVE ? Integer.rotateLeft(bits, shift) : Integer.rotateRight(bits, shift);
+    }
+
+    /**
+     * Applies a websocket mask to the bytes in {@code [offset, limit)}, where the mask key is read in native
+     * byte order as with {@link MutableDirectBuffer#getInt(int)}. Larger payloads are unmasked individually
+     * until the address is 8-byte aligned, then 8 bytes at a time using the mask replicated to 64 bits.
+     * @return The number of bytes unmasked
+     */
     public static int xor(
         final MutableDirectBuffer buffer,
         final int offset,
         final int limit,
         final int bits)
     {
-        final int length = limit - offset;
+        return xor(buffer, offset, buffer, offset, limit - offset, bits);
+    }
 
-        if (bits != 0 && length != 0)
+    /**
+     * Copies bytes from {@code src} to {@code dest}, applying a websocket mask in the same pass. The mask
+     * phase starts at {@code srcOffset}, so the first source byte is unmasked with the first byte of the mask
+     * key, regardless of the alignment of either buffer. The source and destination must not overlap, unless
+     * they are the same range.
+     * @return The number of bytes copied
+     */
+    public static int xor(
+        final DirectBuffer src,
+        final int srcOffset,
+        final MutableDirectBuffer dest,
+        final int destOffset,
+        final int length,
+        final int bits)
+    {
+        if (bits == 0)
         {
-            int index = offset;
+            if (src != dest || srcOffset != destOffset)
+            {
+                dest.putBytes(destOffset, src, srcOffset, length);
+            }
+        }
+        else if (length != 0)
+        {
+            int srcIndex = srcOffset;
+            int destIndex = destOffset;
             int remaining = length;
+            int mask = bits;
 
-            while (remaining >= BitUtil.SIZE_OF_INT)
+            if (remaining >= ALIGNED_THRESHOLD)
             {
-                buffer.putInt(index, buffer.getInt(index) ^ bits);
-                index += BitUtil.SIZE_OF_INT;
-                remaining -= BitUtil.SIZE_OF_INT;
+                final int head = (int) (-(dest.addressOffset() + destIndex) & (SIZE_OF_LONG - 1));
+                for (int i = 0; i < head; i++)
+                {
+                    dest.putByte(destIndex++, (byte) (src.getByte(srcIndex++) ^ ((mask >> REMAINING_SHIFT_1ST_BYTE) & 0xff)));
+                    mask = rotateByte(mask);
+                }
+                remaining -= head;
+
+                final long mask64 = (mask & 0xffffffffL) | ((long) mask << 32);
+
+                while (remaining >= UNROLLED_LENGTH)
+                {
+                    dest.putLong(destIndex, src.getLong(srcIndex) ^ mask64);
+                    dest.putLong(destIndex + SIZE_OF_LONG, src.getLong(srcIndex + SIZE_OF_LONG) ^ mask64);
+                    dest.putLong(destIndex + 2 * SIZE_OF_LONG, src.getLong(srcIndex + 2 * SIZE_OF_LONG) ^ mask64);
+                    dest.putLong(destIndex + 3 * SIZE_OF_LONG, src.getLong(srcIndex + 3 * SIZE_OF_LONG) ^ mask64);
+                    srcIndex += UNROLLED_LENGTH;
+                    destIndex += UNROLLED_LENGTH;
+                    remaining -= UNROLLED_LENGTH;
+                }
+
+                while (remaining >= SIZE_OF_LONG)
+                {
+                    dest.putLong(destIndex, src.getLong(srcIndex) ^ mask64);
+                    srcIndex += SIZE_OF_LONG;
+                    destIndex += SIZE_OF_LONG;
+                    remaining -= SIZE_OF_LONG;
+                }
+            }
+
+            while (remaining >= SIZE_OF_INT)
+            {
+                dest.putInt(destIndex, src.getInt(srcIndex) ^ mask);
+                srcIndex += SIZE_OF_INT;
+                destIndex += SIZE_OF_INT;
+                remaining -= SIZE_OF_INT;
             }
 
             switch (remaining)
@@ -73,15 +161,16 @@ public final class BufferUtil
             case 0:
                 break;
             case 1:
-                buffer.putByte(index, (byte) (buffer.getByte(index) ^ ((bits >> REMAINING_SHIFT_1ST_BYTE) & 0xff)));
+                dest.putByte(destIndex, (byte) (src.getByte(srcIndex) ^ ((mask >> REMAINING_SHIFT_1ST_BYTE) & 0xff)));
                 break;
             case 2:
-                buffer.putShort(index, (short) (buffer.getShort(index) ^ ((bits >> REMAINING_SHIFT_1ST_SHORT) & 0xffff)));
+                dest.putShort(destIndex, (short) (src.getShort(srcIndex) ^ ((mask >> REMAINING_SHIFT_1ST_SHORT) & 0xffff)));
                 break;
             case 3:
-                buffer.putShort(index, (short) (buffer.getShort(index) ^ ((bits >> REMAINING_SHIFT_1ST_SHORT) & 0xffff)));
-                index += BitUtil.SIZE_OF_SHORT;
-                buffer.putByte(index, (byte) (buffer.getByte(index) ^ ((bits >> REMAINING_SHIFT_3RD_BYTE) & 0xff)));
+                dest.putShort(destIndex, (short) (src.getShort(srcIndex) ^ ((mask >> REMAINING_SHIFT_1ST_SHORT) & 0xffff)));
+                srcIndex += SIZE_OF_SHORT;
+                destIndex += SIZE_OF_SHORT;
+                dest.putByte(destIndex, (byte) (src.getByte(srcIndex) ^ ((mask >> REMAINING_SHIFT_3RD_BYTE) & 0xff)));
                 break;
             default:
                 throw new IllegalStateException("remaining=" + remaining);
@@ -90,4 +179,11 @@ public final class BufferUtil
 
         return length;
     }
+
+    // advances the mask by one byte, so its first byte in memory order applies to the next byte
+    private static int rotateByte(
+        int mask)
+    {
+        return BIG_ENDIAN_NATIVE ? Integer.rotateLeft(mask, 8) : Integer.rotateRight(mask, 8);
+    }
 }
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * Computes the {@code Sec-WebSocket-Accept} value for a {@code Sec-WebSocket-Key}, as the Base64 encoded
+ * SHA-1 digest of the key concatenated with the handshake GUID (RFC 6455, section 4.2.2).
+ * The result is written directly into a buffer without allocating.
+ * <b>Each instance of this class is assumed to be used by one and only one thread.</b>
+ */
+public final class HandshakeHash
+{
+    public static final int HASH_LENGTH = 28;
+
+    public static final int MAXIMUM_KEY_LENGTH = 0xff;
+
+    private static final byte[] HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11".getBytes(US_ASCII);
+
+    private static final byte[] BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(US_ASCII);
+
+    private static final int BLOCK_SIZE = 64;
+    private static final int DIGEST_SIZE = 20;
+
+    private final MutableDirectBuffer message =
+            new UnsafeBuffer(new byte[blocks(MAXIMUM_KEY_LENGTH + HANDSHAKE_GUID.length) * BLOCK_SIZE]);
+    private final MutableDirectBuffer digest = new UnsafeBuffer(new byte[DIGEST_SIZE]);
+    private final int[] words = new int[80];
+
+    /**
+     * Writes the accept hash for the given key
+     * @param key - buffer containing the {@code Sec-WebSocket-Key} header value
+     * @param keyOffset - offset of the key in the buffer
+     * @param keyLength - length of the key, at most {@link #MAXIMUM_KEY_LENGTH}
+     * @param dest - buffer receiving the {@link #HASH_LENGTH} byte ASCII accept hash
+     * @param destOffset - offset in the destination buffer
+     * @return The number of bytes written
+     */
+    public int encode(
+        DirectBuffer key,
+        int keyOffset,
+        int keyLength,
+        MutableDirectBuffer dest,
+        int destOffset)
+    {
+        if (keyLength > MAXIMUM_KEY_LENGTH)
+        {
+            throw new IllegalArgumentException("key too long");
+        }
+
+        sha1(key, keyOffset, keyLength);
+
+        return base64(digest, DIGEST_SIZE, dest, destOffset);
+    }
+
+    private void sha1(
+        DirectBuffer key,
+        int keyOffset,
+        int keyLength)
+    {
+        final int length = keyLength + HANDSHAKE_GUID.length;
+        final int blocks = blocks(length);
+        final int padded = blocks * BLOCK_SIZE;
+
+        message.putBytes(0, key, keyOffset, keyLength);
+        message.putBytes(keyLength, HANDSHAKE_GUID);
+        message.putByte(length, (byte) 0x80);
+        message.setMemory(length + 1, padded - length - 1 - 8, (byte) 0);
+        message.putLong(padded - 8, (long) length << 3, BIG_ENDIAN);
+
+        int h0 = 0x67452301;
+        int h1 = 0xefcdab89;
+        int h2 = 0x98badcfe;
+        int h3 = 0x10325476;
+        int h4 = 0xc3d2e1f0;
+
+        final int[] w = words;
+
+        for (int block = 0; block < padded; block += BLOCK_SIZE)
+        {
+            for (int i = 0; i < 16; i++)
+            {
+                w[i] = message.getInt(block + (i << 2), BIG_ENDIAN);
+            }
+
+            for (int i = 16; i < 80; i++)
+            {
+                w[i] = Integer.rotateLeft(w[i - 3] ^ w[i - 8] ^ w[i - 14] ^ w[i - 16], 1);
+            }
+
+            int a = h0;
+            int b = h1;
+            int c = h2;
+            int d = h3;
+            int e = h4;
+
+            for (int i = 0; i < 80; i++)
+            {
+                final int f;
+                final int k;
+
+                if (i < 20)
+                {
+                    f = (b & c) | (~b & d);
+                    k = 0x5a827999;
+                }
+                else if (i < 40)
+                {
+                    f = b ^ c ^ d;
+                    k = 0x6ed9eba1;
+                }
+                else if (i < 60)
+                {
+                    f = (b & c) | (b & d) | (c & d);
+                    k = 0x8f1bbcdc;
+                }
+                else
+                {
+                    f = b ^ c ^ d;
+                    k = 0xca62c1d6;
+                }
+
+                final int temp = Integer.rotateLeft(a, 5) + f + e + k + w[i];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+
+            h0 += a;
+            h1 += b;
+            h2 += c;
+            h3 += d;
+            h4 += e;
+        }
+
+        digest.putInt(0, h0, BIG_ENDIAN);
+        digest.putInt(4, h1, BIG_ENDIAN);
+        digest.putInt(8, h2, BIG_ENDIAN);
+        digest.putInt(12, h3, BIG_ENDIAN);
+        digest.putInt(16, h4, BIG_ENDIAN);
+    }
+
+    private static int base64(
+        DirectBuffer src,
+        int length,
+        MutableDirectBuffer dest,
+        int destOffset)
+    {
+        int progress = destOffset;
+
+        for (int i = 0; i < length; i += 3)
+        {
+            final int remaining = length - i;
+            final int bits = (src.getByte(i) & 0xff) << 16 |
+                             (remaining > 1 ? (src.getByte(i + 1) & 0xff) << 8 : 0) |
+                             (remaining > 2 ? src.getByte(i + 2) & 0xff : 0);
+
+            dest.putByte(progress++, BASE64_ALPHABET[(bits >>> 18) & 0x3f]);
+            dest.putByte(progress++, BASE64_ALPHABET[(bits >>> 12) & 0x3f]);
+            dest.putByte(progress++, remaining > 1 ? BASE64_ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=');
+            dest.putByte(progress++, remaining > 2 ? BASE64_ALPHABET[bits & 0x3f] : (byte) '=');
+        }
+
+        return progress - destOffset;
+    }
+
+    private static int blocks(
+        int length)
+    {
+        // message, 0x80 terminator and 64-bit length, rounded up to whole blocks
+        return (length + 1 + 8 + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * Walks the elements of a comma separated HTTP header value, such as {@code Sec-WebSocket-Protocol},
+ * in order, directly over the encoded bytes. Optional whitespace around elements and empty elements
+ * are skipped (RFC 7230, section 7).
+ * <b>Each instance of this class is assumed to be used by one and only one thread.</b>
+ */
+public final class HeaderValueTokenizer
+{
+    private DirectBuffer buffer;
+    private int limit;
+    private int progress;
+    private int tokenOffset;
+    private int tokenLength;
+
+    public HeaderValueTokenizer wrap(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        this.buffer = buffer;
+        this.limit = offset + length;
+        this.progress = offset;
+        this.tokenOffset = offset;
+        this.tokenLength = 0;
+        return this;
+    }
+
+    /**
+     * Advances to the next non-empty element
+     * @return {@code true} if an element was found, otherwise {@code false}
+     */
+    public boolean next()
+    {
+        while (progress < limit)
+        {
+            int start = progress;
+            while (start < limit && isWhitespace(buffer.getByte(start)))
+            {
+                start++;
+            }
+
+            int end = start;
+            while (end < limit && buffer.getByte(end) != ',')
+            {
+                end++;
+            }
+            progress = end + 1;
+
+            while (end > start && isWhitespace(buffer.getByte(end - 1)))
+            {
+                end--;
+            }
+
+            if (end > start)
+            {
+                tokenOffset = start;
+                tokenLength = end - start;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public DirectBuffer buffer()
+    {
+        return buffer;
+    }
+
+    public int tokenOffset()
+    {
+        return tokenOffset;
+    }
+
+    public int tokenLength()
+    {
+        return tokenLength;
+    }
+
+    private static boolean isWhitespace(
+        byte b)
+    {
+        return b == ' ' || b == '\t';
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import static org.agrona.BitUtil.align;
+import static org.agrona.concurrent.ringbuffer.OneToOneRingBuffer.PADDING_MSG_TYPE_ID;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.ALIGNMENT;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.HEADER_LENGTH;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.checkTypeId;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.makeHeader;
+import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.HEAD_CACHE_POSITION_OFFSET;
+import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.HEAD_POSITION_OFFSET;
+import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.TAIL_POSITION_OFFSET;
+
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+
+/**
+ * Claims space for a message in a one-to-one ring buffer so it can be encoded in place, then commits it,
+ * avoiding the copy made by {@link RingBuffer#write(int, org.agrona.DirectBuffer, int, int)}. Records follow
+ * the same layout and ordering as {@code write}, so the consumer is unchanged. The space claimed must cover
+ * the largest message that may be encoded, but only the committed length is consumed from the ring buffer.
+ * <b>Each instance of this class is assumed to be used by the single producer of the ring buffer.</b>
+ */
+public final class RingBufferClaim
+{
+    public static final int INSUFFICIENT_CAPACITY = -1;
+
+    private final AtomicBuffer buffer;
+    private final int capacity;
+    private final int maxMsgLength;
+    private final int tailPositionIndex;
+    private final int headCachePositionIndex;
+    private final int headPositionIndex;
+
+    private int recordIndex;
+    private int maxLength;
+    private long tail;
+
+    public RingBufferClaim(
+        RingBuffer ringBuffer)
+    {
+        this.buffer = ringBuffer.buffer();
+        this.capacity = ringBuffer.capacity();
+        this.maxMsgLength = ringBuffer.maxMsgLength();
+        this.tailPositionIndex = capacity + TAIL_POSITION_OFFSET;
+        this.headCachePositionIndex = capacity + HEAD_CACHE_POSITION_OFFSET;
+        this.headPositionIndex = capacity + HEAD_POSITION_OFFSET;
+        this.recordIndex = INSUFFICIENT_CAPACITY;
+    }
+
+    public AtomicBuffer buffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * Claims contiguous space for a message
+     * @param maxLength - the maximum length of the message to be encoded
+     * @return The index in {@link #buffer()} at which to encode the message, or {@link #INSUFFICIENT_CAPACITY}
+     */
+    public int claim(
+        int maxLength)
+    {
+        if (maxLength > maxMsgLength)
+        {
+            throw new IllegalArgumentException(String.format(
+                "encoded message exceeds maxMsgLength of %d, length=%d", maxMsgLength, maxLength));
+        }
+
+        // as for write, room is left for the header zeroed after the record, so the record at head is never overwritten
+        final int required = align(maxLength + HEADER_LENGTH, ALIGNMENT) + HEADER_LENGTH;
+        final int mask = capacity - 1;
+
+        long head = buffer.getLong(headCachePositionIndex);
+        final long tail = buffer.getLong(tailPositionIndex);
+
+        if (required > capacity - (int) (tail - head))
+        {
+            head = buffer.getLongVolatile(headPositionIndex);
+            if (required > capacity - (int) (tail - head))
+            {
+                return INSUFFICIENT_CAPACITY;
+            }
+            buffer.putLong(headCachePositionIndex, head);
+        }
+
+        int padding = 0;
+        int recordIndex = (int) tail & mask;
+        final int toBufferEndLength = capacity - recordIndex;
+
+        if (required > toBufferEndLength)
+        {
+            int headIndex = (int) head & mask;
+            if (required > headIndex)
+            {
+                head = buffer.getLongVolatile(headPositionIndex);
+                headIndex = (int) head & mask;
+                if (required > headIndex)
+                {
+                    return INSUFFICIENT_CAPACITY;
+                }
+                buffer.putLong(headCachePositionIndex, head);
+            }
+            padding = toBufferEndLength;
+        }
+
+        if (padding != 0)
+        {
+            buffer.putLong(0, 0L);
+            buffer.putLongOrdered(recordIndex, makeHeader(padding, PADDING_MSG_TYPE_ID));
+            recordIndex = 0;
+        }
+
+        this.recordIndex = recordIndex;
+        this.maxLength = maxLength;
+        this.tail = tail + padding;
+
+        return recordIndex + HEADER_LENGTH;
+    }
+
+    /**
+     * Publishes the claimed message to the consumer
+     * @param msgTypeId - the message type
+     * @param length - the encoded length of the message, no more than the length claimed
+     */
+    public void commit(
+        int msgTypeId,
+        int length)
+    {
+        checkTypeId(msgTypeId);
+
+        if (recordIndex == INSUFFICIENT_CAPACITY || length > maxLength)
+        {
+            throw new IllegalStateException(String.format("no claim for length=%d", length));
+        }
+
+        final int recordLength = length + HEADER_LENGTH;
+        final int alignedRecordLength = align(recordLength, ALIGNMENT);
+
+        buffer.putLong(recordIndex + alignedRecordLength, 0L);
+        buffer.putLongOrdered(recordIndex, makeHeader(recordLength, msgTypeId));
+        buffer.putLongOrdered(tailPositionIndex, tail + alignedRecordLength);
+
+        this.recordIndex = INSUFFICIENT_CAPACITY;
+    }
+
+    /**
+     * Abandons the claimed message without publishing it, so its space is reused by the next claim
+     */
+    public void abort()
+    {
+        if (recordIndex == INSUFFICIENT_CAPACITY)
+        {
+            throw new IllegalStateException("no claim to abort");
+        }
+
+        // any padding before the claimed record is already visible to the consumer, so must still be skipped
+        buffer.putLongOrdered(tailPositionIndex, tail);
+
+        this.recordIndex = INSUFFICIENT_CAPACITY;
+    }
+}
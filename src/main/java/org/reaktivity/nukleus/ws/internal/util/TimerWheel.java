@@ -0,0 +1,171 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import java.util.function.LongConsumer;
+
+import org.agrona.collections.LongArrayList;
+
+/**
+ * A hierarchical timer wheel for timers identified by a {@code long}. Each level has a fixed number of
+ * slots, and each slot of a level spans all the slots of the level below. Timers due within the span of
+ * level zero fire from their slot directly; timers further out are cascaded down a level as the wheel turns.
+ * <p>
+ * Timers cannot be cancelled, so the expiry handler should ignore timers that are no longer relevant.
+ * <b>Each instance of this class is assumed to be used by one and only one thread.</b>
+ */
+public final class TimerWheel
+{
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS_PER_LEVEL = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS_PER_LEVEL - 1;
+    private static final int LEVELS = 4;
+    private static final long MAXIMUM_DELAY_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final LongArrayList[][] timerIds;
+    private final LongArrayList[][] deadlines;
+    private final LongArrayList cascadeTimerIds;
+    private final LongArrayList cascadeDeadlines;
+    private final long tickResolution;
+
+    private long currentTick;
+
+    /**
+     * Creates a timer wheel
+     * @param tickResolution - duration of one tick, in the same time unit as passed to {@link #expire(long, LongConsumer)}
+     * @param startTime - the current time
+     */
+    public TimerWheel(
+        long tickResolution,
+        long startTime)
+    {
+        if (tickResolution <= 0L)
+        {
+            throw new IllegalArgumentException("tickResolution must be positive");
+        }
+
+        this.tickResolution = tickResolution;
+        this.currentTick = startTime / tickResolution;
+        this.timerIds = new LongArrayList[LEVELS][SLOTS_PER_LEVEL];
+        this.deadlines = new LongArrayList[LEVELS][SLOTS_PER_LEVEL];
+        for (int level = 0; level < LEVELS; level++)
+        {
+            for (int slot = 0; slot < SLOTS_PER_LEVEL; slot++)
+            {
+                timerIds[level][slot] = new LongArrayList();
+                deadlines[level][slot] = new LongArrayList();
+            }
+        }
+        this.cascadeTimerIds = new LongArrayList();
+        this.cascadeDeadlines = new LongArrayList();
+    }
+
+    /**
+     * Schedules a timer
+     * @param deadline - time at which the timer should expire, rounded up to the next tick
+     * @param timerId - identifies the timer to the expiry handler
+     */
+    public void schedule(
+        long deadline,
+        long timerId)
+    {
+        final long deadlineTick = (deadline + tickResolution - 1) / tickResolution;
+        insert(Math.max(deadlineTick, currentTick + 1), timerId);
+    }
+
+    /**
+     * Advances the wheel to the given time, firing all timers due by then
+     * @param now - the current time
+     * @param handler - called with the id of each expired timer
+     * @return The number of expired timers
+     */
+    public int expire(
+        long now,
+        LongConsumer handler)
+    {
+        final long targetTick = now / tickResolution;
+
+        int expired = 0;
+        while (currentTick < targetTick)
+        {
+            currentTick++;
+            cascade(1);
+
+            final int slot = (int) currentTick & SLOT_MASK;
+            final LongArrayList slotTimerIds = timerIds[0][slot];
+            final int size = slotTimerIds.size();
+            for (int i = 0; i < size; i++)
+            {
+                handler.accept(slotTimerIds.getLong(i));
+            }
+            slotTimerIds.clear();
+            deadlines[0][slot].clear();
+            expired += size;
+        }
+
+        return expired;
+    }
+
+    private void cascade(
+        int level)
+    {
+        final int shift = SLOT_BITS * level;
+        if (level < LEVELS && (currentTick & ((1L << shift) - 1)) == 0L)
+        {
+            cascade(level + 1);
+
+            final int slot = (int) (currentTick >>> shift) & SLOT_MASK;
+            final LongArrayList slotTimerIds = timerIds[level][slot];
+            final LongArrayList slotDeadlines = deadlines[level][slot];
+            final int size = slotTimerIds.size();
+            if (size != 0)
+            {
+                for (int i = 0; i < size; i++)
+                {
+                    cascadeTimerIds.addLong(slotTimerIds.getLong(i));
+                    cascadeDeadlines.addLong(slotDeadlines.getLong(i));
+                }
+                slotTimerIds.clear();
+                slotDeadlines.clear();
+
+                for (int i = 0; i < size; i++)
+                {
+                    insert(Math.max(cascadeDeadlines.getLong(i), currentTick), cascadeTimerIds.getLong(i));
+                }
+                cascadeTimerIds.clear();
+                cascadeDeadlines.clear();
+            }
+        }
+    }
+
+    private void insert(
+        long deadlineTick,
+        long timerId)
+    {
+        final long delay = Math.min(deadlineTick - currentTick, MAXIMUM_DELAY_TICKS);
+        final long slotTick = currentTick + delay;
+
+        int level = 0;
+        while (delay >= 1L << (SLOT_BITS * (level + 1)))
+        {
+            level++;
+        }
+
+        final int slot = (int) (slotTick >>> (SLOT_BITS * level)) & SLOT_MASK;
+        timerIds[level][slot].addLong(timerId);
+        deadlines[level][slot].addLong(deadlineTick);
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.ByteOrder.nativeOrder;
+import static java.util.Arrays.fill;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * Streaming validation of UTF-8 as defined by RFC 3629, rejecting overlong encodings, surrogates and code points
+ * beyond U+10FFFF. The state is an {@code int} carried by the caller between calls, so a sequence may be split
+ * across any number of buffers.
+ */
+public final class Utf8
+{
+    public static final int UTF8_ACCEPT = 0;
+    public static final int UTF8_REJECT = 1;
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final boolean BIG_ENDIAN_NATIVE = nativeOrder() == BIG_ENDIAN;
+
+    // byte classes
+    private static final int ASCII = 0;
+    private static final int CONTINUATION_80_8F = 1;
+    private static final int CONTINUATION_90_9F = 2;
+    private static final int CONTINUATION_A0_BF = 3;
+    private static final int INVALID = 4;
+    private static final int LEAD_2 = 5;
+    private static final int LEAD_E0 = 6;
+    private static final int LEAD_3 = 7;
+    private static final int LEAD_ED = 8;
+    private static final int LEAD_F0 = 9;
+    private static final int LEAD_4 = 10;
+    private static final int LEAD_F4 = 11;
+    private static final int CLASS_COUNT = 12;
+
+    // states, other than accept and reject, named by the continuation bytes still expected
+    private static final int NEED_1 = 2;
+    private static final int NEED_2 = 3;
+    private static final int NEED_2_AFTER_E0 = 4;
+    private static final int NEED_2_AFTER_ED = 5;
+    private static final int NEED_3 = 6;
+    private static final int NEED_3_AFTER_F0 = 7;
+    private static final int NEED_3_AFTER_F4 = 8;
+    private static final int STATE_COUNT = 9;
+    private static final int STATE_BITS = 4;
+
+    private static final byte[] CLASSES = new byte[256];
+    private static final byte[] TRANSITIONS = new byte[STATE_COUNT * CLASS_COUNT];
+
+    // transitions indexed by octet and state together, so each byte costs a single lookup
+    private static final byte[] TRANSITIONS_BY_OCTET = new byte[256 << STATE_BITS];
+
+    static
+    {
+        classify(0x00, 0x7f, ASCII);
+        classify(0x80, 0x8f, CONTINUATION_80_8F);
+        classify(0x90, 0x9f, CONTINUATION_90_9F);
+        classify(0xa0, 0xbf, CONTINUATION_A0_BF);
+        classify(0xc0, 0xc1, INVALID);
+        classify(0xc2, 0xdf, LEAD_2);
+        classify(0xe0, 0xe0, LEAD_E0);
+        classify(0xe1, 0xec, LEAD_3);
+        classify(0xed, 0xed, LEAD_ED);
+        classify(0xee, 0xef, LEAD_3);
+        classify(0xf0, 0xf0, LEAD_F0);
+        classify(0xf1, 0xf3, LEAD_4);
+        classify(0xf4, 0xf4, LEAD_F4);
+        classify(0xf5, 0xff, INVALID);
+
+        fill(TRANSITIONS, (byte) UTF8_REJECT);
+
+        transition(UTF8_ACCEPT, ASCII, UTF8_ACCEPT);
+        transition(UTF8_ACCEPT, LEAD_2, NEED_1);
+        transition(UTF8_ACCEPT, LEAD_E0, NEED_2_AFTER_E0);
+        transition(UTF8_ACCEPT, LEAD_3, NEED_2);
+        transition(UTF8_ACCEPT, LEAD_ED, NEED_2_AFTER_ED);
+        transition(UTF8_ACCEPT, LEAD_F0, NEED_3_AFTER_F0);
+        transition(UTF8_ACCEPT, LEAD_4, NEED_3);
+        transition(UTF8_ACCEPT, LEAD_F4, NEED_3_AFTER_F4);
+
+        transitionOnContinuation(NEED_1, UTF8_ACCEPT, CONTINUATION_80_8F, CONTINUATION_90_9F, CONTINUATION_A0_BF);
+        transitionOnContinuation(NEED_2, NEED_1, CONTINUATION_80_8F, CONTINUATION_90_9F, CONTINUATION_A0_BF);
+        transitionOnContinuation(NEED_2_AFTER_E0, NEED_1, CONTINUATION_A0_BF);
+        transitionOnContinuation(NEED_2_AFTER_ED, NEED_1, CONTINUATION_80_8F, CONTINUATION_90_9F);
+        transitionOnContinuation(NEED_3, NEED_2, CONTINUATION_80_8F, CONTINUATION_90_9F, CONTINUATION_A0_BF);
+        transitionOnContinuation(NEED_3_AFTER_F0, NEED_2, CONTINUATION_90_9F, CONTINUATION_A0_BF);
+        transitionOnContinuation(NEED_3_AFTER_F4, NEED_2, CONTINUATION_80_8F);
+
+        fill(TRANSITIONS_BY_OCTET, (byte) UTF8_REJECT);
+
+        for (int octet = 0; octet < 256; octet++)
+        {
+            for (int state = 0; state < STATE_COUNT; state++)
+            {
+                TRANSITIONS_BY_OCTET[octet << STATE_BITS | state] = TRANSITIONS[state * CLASS_COUNT + CLASSES[octet]];
+            }
+        }
+    }
+
+    private Utf8()
+    {
+        // utility class, no instances
+    }
+
+    /**
+     * Copies bytes from {@code src} to {@code dest}, applying a websocket mask and validating the unmasked bytes
+     * as UTF-8 in the same pass, so each byte is read only once. While no sequence is pending, runs of 8 ASCII
+     * bytes are accepted with a single check of their high bits. The mask phase starts at {@code srcOffset},
+     * as for {@link BufferUtil#xor(DirectBuffer, int, MutableDirectBuffer, int, int, int)}.
+     * @param state - the validation state after the preceding bytes, or {@link #UTF8_ACCEPT} at the start
+     * @return The validation state after these bytes, {@link #UTF8_ACCEPT} only if no sequence is left incomplete,
+     *         or {@link #UTF8_REJECT} in which case the bytes copied are unspecified
+     */
+    public static int xorAndValidate(
+        final DirectBuffer src,
+        final int srcOffset,
+        final MutableDirectBuffer dest,
+        final int destOffset,
+        final int length,
+        final int bits,
+        int state)
+    {
+        final long mask = (long) bits << 32 | bits & 0xffffffffL;
+
+        int progress = 0;
+
+        for (; progress <= length - SIZE_OF_LONG && state != UTF8_REJECT; progress += SIZE_OF_LONG)
+        {
+            final long word = src.getLong(srcOffset + progress) ^ mask;
+            dest.putLong(destOffset + progress, word);
+
+            if (state != UTF8_ACCEPT || (word & HIGH_BITS) != 0L)
+            {
+                state = validateWord(word, state);
+            }
+        }
+
+        for (; progress < length && state != UTF8_REJECT; progress++)
+        {
+            final int maskShift = BIG_ENDIAN_NATIVE ? 24 - ((progress & 3) << 3) : (progress & 3) << 3;
+            final int octet = (src.getByte(srcOffset + progress) ^ (bits >> maskShift)) & 0xff;
+            dest.putByte(destOffset + progress, (byte) octet);
+            state = next(state, octet);
+        }
+
+        return state;
+    }
+
+    // bytes in memory order, first byte in the least significant bits when little endian
+    private static int validateWord(
+        long word,
+        int state)
+    {
+        long octets = BIG_ENDIAN_NATIVE ? Long.reverseBytes(word) : word;
+
+        for (int i = 0; i < SIZE_OF_LONG; i++)
+        {
+            state = next(state, (int) octets & 0xff);
+            octets >>>= 8;
+        }
+
+        return state;
+    }
+
+    private static int next(
+        int state,
+        int octet)
+    {
+        return TRANSITIONS_BY_OCTET[octet << STATE_BITS | state];
+    }
+
+    private static void classify(
+        int first,
+        int last,
+        int byteClass)
+    {
+        for (int octet = first; octet <= last; octet++)
+        {
+            CLASSES[octet] = (byte) byteClass;
+        }
+    }
+
+    private static void transition(
+        int state,
+        int byteClass,
+        int nextState)
+    {
+        TRANSITIONS[state * CLASS_COUNT + byteClass] = (byte) nextState;
+    }
+
+    private static void transitionOnContinuation(
+        int state,
+        int nextState,
+        int... byteClasses)
+    {
+        for (int byteClass : byteClasses)
+        {
+            transition(state, byteClass, nextState);
+        }
+    }
+}
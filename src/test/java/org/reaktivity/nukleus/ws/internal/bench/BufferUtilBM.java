@@ -0,0 +1,155 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.bench;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.ByteOrder.nativeOrder;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.agrona.BitUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.ws.internal.util.BufferUtil;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class BufferUtilBM
+{
+    private static final int SHIFT_1ST_BYTE = nativeOrder() == BIG_ENDIAN ? 24 : 0;
+    private static final int SHIFT_1ST_SHORT = nativeOrder() == BIG_ENDIAN ? 16 : 0;
+    private static final int SHIFT_3RD_BYTE = nativeOrder() == BIG_ENDIAN ? 8 : 16;
+
+    @Param({ "1", "7", "64", "1024", "4096", "16384", "65536", "131072" })
+    public int length;
+
+    // offset of the payload, as after a frame header
+    @Param({ "0", "6" })
+    public int offset;
+
+    private MutableDirectBuffer buffer;
+    private MutableDirectBuffer copy;
+    private int bits;
+
+    @Setup(Level.Trial)
+    public void init()
+    {
+        final Random random = new Random(0L);
+        final byte[] payload = new byte[offset + length];
+        random.nextBytes(payload);
+
+        this.buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(payload.length));
+        this.buffer.putBytes(0, payload);
+        this.copy = new UnsafeBuffer(ByteBuffer.allocateDirect(payload.length));
+        this.bits = random.nextInt() | 1;
+    }
+
+    @Benchmark
+    public int xor()
+    {
+        return BufferUtil.xor(buffer, offset, offset + length, bits);
+    }
+
+    @Benchmark
+    public int xorInt()
+    {
+        return xorInt(buffer, offset, offset + length, bits);
+    }
+
+    @Benchmark
+    public int copyAndXor()
+    {
+        return BufferUtil.xor(buffer, offset, copy, 0, length, bits);
+    }
+
+    @Benchmark
+    public int copyThenXor()
+    {
+        copy.putBytes(0, buffer, offset, length);
+        return BufferUtil.xor(copy, 0, length, bits);
+    }
+
+    // previous implementation, 4 bytes at a time
+    private static int xorInt(
+        final MutableDirectBuffer buffer,
+        final int offset,
+        final int limit,
+        final int bits)
+    {
+        final int length = limit - offset;
+
+        int index = offset;
+        int remaining = length;
+
+        while (remaining >= BitUtil.SIZE_OF_INT)
+        {
+            buffer.putInt(index, buffer.getInt(index) ^ bits);
+            index += BitUtil.SIZE_OF_INT;
+            remaining -= BitUtil.SIZE_OF_INT;
+        }
+
+        switch (remaining)
+        {
+        case 1:
+            buffer.putByte(index, (byte) (buffer.getByte(index) ^ ((bits >> SHIFT_1ST_BYTE) & 0xff)));
+            break;
+        case 2:
+            buffer.putShort(index, (short) (buffer.getShort(index) ^ ((bits >> SHIFT_1ST_SHORT) & 0xffff)));
+            break;
+        case 3:
+            buffer.putShort(index, (short) (buffer.getShort(index) ^ ((bits >> SHIFT_1ST_SHORT) & 0xffff)));
+            index += BitUtil.SIZE_OF_SHORT;
+            buffer.putByte(index, (byte) (buffer.getByte(index) ^ ((bits >> SHIFT_3RD_BYTE) & 0xff)));
+            break;
+        default:
+            break;
+        }
+
+        return length;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(BufferUtilBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
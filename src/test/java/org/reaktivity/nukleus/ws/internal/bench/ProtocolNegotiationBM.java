@@ -0,0 +1,110 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.bench;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.ws.internal.routable.Route;
+import org.reaktivity.nukleus.ws.internal.routable.RouteDispatch;
+import org.reaktivity.nukleus.ws.internal.routable.stream.HandshakeHeaders;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class ProtocolNegotiationBM
+{
+    private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+    private final HandshakeHeaders handshake = new HandshakeHeaders();
+
+    @Param({ "1", "2", "5", "10", "20" })
+    public int offered;
+
+    private ListFW<HttpHeaderFW> headers;
+    private RouteDispatch dispatch;
+
+    @Setup(Level.Trial)
+    public void init()
+    {
+        final StringBuilder protocols = new StringBuilder();
+        for (int i = 1; i <= offered; i++)
+        {
+            if (protocols.length() != 0)
+            {
+                protocols.append(", ");
+            }
+            protocols.append("protocol-").append(i);
+        }
+
+        // only the least preferred protocol has a route
+        final String routed = "protocol-" + offered;
+        this.dispatch = new RouteDispatch(singletonList(new Route("source", 1L, null, 2L, routed, null, null, null, null, null)));
+
+        this.headers = httpBeginExRW.wrap(new UnsafeBuffer(new byte[1024]), 0, 1024)
+                .headers(hs ->
+                {
+                    hs.item(h -> h.name(":scheme").value("http"));
+                    hs.item(h -> h.name(":method").value("GET"));
+                    hs.item(h -> h.name(":path").value("/"));
+                    hs.item(h -> h.name("host").value("localhost:8080"));
+                    hs.item(h -> h.name("upgrade").value("websocket"));
+                    hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+                    hs.item(h -> h.name("sec-websocket-version").value("13"));
+                    hs.item(h -> h.name("sec-websocket-protocol").value(protocols.toString()));
+                })
+                .build()
+                .headers();
+    }
+
+    @Benchmark
+    public Route negotiate()
+    {
+        return handshake.wrap(headers).negotiate(dispatch);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(ProtocolNegotiationBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
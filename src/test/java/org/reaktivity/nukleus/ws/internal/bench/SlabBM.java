@@ -0,0 +1,96 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.ws.internal.routable.stream.Slab;
+
+/**
+ * Measures acquiring and releasing a slot for a new stream, with a given percentage of slots already in use
+ * by other streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class SlabBM
+{
+    private static final int SLOT_CAPACITY = 1024;
+
+    @Param({ "4096" })
+    public int slots;
+
+    @Param({ "0", "50", "90", "99" })
+    public int occupancy;
+
+    private Slab slab;
+    private long streamId;
+
+    @Setup(Level.Trial)
+    public void init()
+    {
+        final Random random = new Random(0L);
+
+        this.slab = new Slab(slots * SLOT_CAPACITY, SLOT_CAPACITY);
+
+        // acquired by streams with random ids, as for concurrent streams on a busy nukleus
+        for (int i = slots * occupancy / 100; i > 0; i--)
+        {
+            slab.acquire(random.nextLong());
+        }
+
+        this.streamId = random.nextLong();
+    }
+
+    @Benchmark
+    public int acquireAndRelease()
+    {
+        final int slot = slab.acquire(streamId++);
+        slab.release(slot);
+        return slot;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(SlabBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
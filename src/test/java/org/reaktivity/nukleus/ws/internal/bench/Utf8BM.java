@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.bench;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.UTF8_ACCEPT;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.util.Random;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.ws.internal.util.BufferUtil;
+import org.reaktivity.nukleus.ws.internal.util.Utf8;
+
+/**
+ * Measures the cost of validating text payloads as UTF-8 while unmasking, compared with unmasking alone and
+ * with unmasking followed by a separate decoding pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class Utf8BM
+{
+    private static final String[] ASCII = { "The quick brown fox ", "jumps over ", "the lazy dog. " };
+    private static final String[] MULTILINGUAL = { "\u03ba\u1f79\u03c3\u03bc\u03b5 ", "\u30cf\u30ed\u30fc ",
+        "Gr\u00fc\u00dfe ", "\u043f\u0440\u0438\u0432\u0435\u0442 ", "\ud83d\ude42 ", "hello " };
+
+    @Param({ "ascii", "multilingual" })
+    public String text;
+
+    @Param({ "64", "1024", "16384" })
+    public int length;
+
+    private final CharsetDecoder decoder = UTF_8.newDecoder();
+
+    private MutableDirectBuffer buffer;
+    private MutableDirectBuffer copy;
+    private ByteBuffer copyBytes;
+    private CharBuffer chars;
+    private int bits;
+
+    @Setup(Level.Trial)
+    public void init()
+    {
+        final Random random = new Random(0L);
+        final String[] samples = "ascii".equals(text) ? ASCII : MULTILINGUAL;
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        for (byte[] sample = next(samples, random); out.size() + sample.length <= length; sample = next(samples, random))
+        {
+            out.write(sample, 0, sample.length);
+        }
+        while (out.size() < length)
+        {
+            out.write(' ');
+        }
+
+        this.bits = random.nextInt() | 1;
+        this.buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(length));
+        this.copyBytes = ByteBuffer.allocateDirect(length);
+        this.copy = new UnsafeBuffer(copyBytes);
+        this.chars = CharBuffer.allocate(length);
+
+        // masked in place, so unmasking restores the text
+        this.buffer.putBytes(0, out.toByteArray());
+        BufferUtil.xor(buffer, 0, length, bits);
+    }
+
+    @Benchmark
+    public int copyAndXor()
+    {
+        return BufferUtil.xor(buffer, 0, copy, 0, length, bits);
+    }
+
+    @Benchmark
+    public int copyAndXorAndValidate()
+    {
+        return Utf8.xorAndValidate(buffer, 0, copy, 0, length, bits, UTF8_ACCEPT);
+    }
+
+    @Benchmark
+    public int copyAndXorThenDecode()
+    {
+        BufferUtil.xor(buffer, 0, copy, 0, length, bits);
+
+        copyBytes.clear();
+        chars.clear();
+        decoder.reset();
+        decoder.decode(copyBytes, chars, true);
+
+        return chars.position();
+    }
+
+    private static byte[] next(
+        String[] samples,
+        Random random)
+    {
+        return samples[random.nextInt(samples.length)].getBytes(UTF_8);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(Utf8BM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.bench;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+import static org.reaktivity.nukleus.Configuration.STREAMS_BUFFER_CAPACITY_PROPERTY_NAME;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.ws.internal.WsController;
+import org.reaktivity.nukleus.ws.internal.WsStreams;
+import org.reaktivity.nukleus.ws.internal.types.Flyweight;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.WindowFW;
+import org.reaktivity.reaktor.Reaktor;
+
+/**
+ * Measures delivery of fragmented messages, each sent in one DataFW, when fragments are either forwarded
+ * as they arrive or reassembled into one message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class WsFragmentationBM
+{
+    private static final int FRAGMENT_SIZE = 128;
+
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+
+    private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+
+    @Param({ "false", "true" })
+    public boolean reassemble;
+
+    @Param({ "2", "8", "32" })
+    public int fragments;
+
+    private Reaktor reaktor;
+
+    private WsStreams sourceInputStreams;
+    private WsStreams sourceOutputEstStreams;
+
+    private MutableDirectBuffer throttleBuffer;
+
+    private long sourceInputRef;
+    private long targetInputRef;
+
+    private DataFW data;
+
+    private MessageHandler sourceOutputEstHandler;
+
+    @Setup(Level.Trial)
+    public void reinit() throws Exception
+    {
+        System.setProperty("nukleus.ws.reassemble.fragments", Boolean.toString(reassemble));
+
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, "target/nukleus-benchmarks");
+        properties.setProperty(STREAMS_BUFFER_CAPACITY_PROPERTY_NAME, Long.toString(1024L * 1024L * 16L));
+
+        this.reaktor = Reaktor.builder()
+                              .config(new Configuration(properties))
+                              .nukleus("ws"::equals)
+                              .controller(WsController.class::isAssignableFrom)
+                              .errorHandler(ex -> ex.printStackTrace(System.err))
+                              .build()
+                              .start();
+
+        final Random random = new Random();
+        final WsController controller = reaktor.controller(WsController.class);
+
+        this.targetInputRef = random.nextLong();
+        this.sourceInputRef = controller.routeServer("source", 0L, "target", targetInputRef, null).get();
+
+        this.sourceInputStreams = controller.streams("source");
+        this.sourceOutputEstStreams = controller.streams("source", "target");
+
+        final long sourceInputId = random.nextLong();
+        this.sourceOutputEstHandler = this::processBegin;
+
+        final Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers = hs ->
+        {
+            hs.item(h -> h.name(":scheme").value("http"));
+            hs.item(h -> h.name(":method").value("GET"));
+            hs.item(h -> h.name(":path").value("/"));
+            hs.item(h -> h.name("host").value("localhost:8080"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+        };
+
+        final AtomicBuffer writeBuffer = new UnsafeBuffer(new byte[64 * 1024]);
+
+        BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(sourceInputId)
+                .source("source")
+                .sourceRef(sourceInputRef)
+                .correlationId(random.nextLong())
+                .extension(e -> e.set(visitHttpBeginEx(headers)))
+                .build();
+
+        this.sourceInputStreams.writeStreams(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        final MutableDirectBuffer message = new UnsafeBuffer(new byte[fragments * (FRAGMENT_SIZE + 8)]);
+        final byte[] fragment = new byte[FRAGMENT_SIZE];
+        int messageLength = 0;
+
+        for (int i = 0; i < fragments; i++)
+        {
+            random.nextBytes(fragment);
+            final int opcode = i == 0 ? 0x02 : 0x00;
+            final boolean fin = i == fragments - 1;
+            messageLength += encodeMaskedFrame(message, messageLength, fin, opcode, random.nextInt() | 1, fragment);
+        }
+
+        final int payloadLength = messageLength;
+        this.data = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                          .streamId(sourceInputId)
+                          .payload(p -> p.set(message, 0, payloadLength))
+                          .extension(e -> e.reset())
+                          .build();
+
+        this.throttleBuffer = new UnsafeBuffer(allocateDirect(SIZE_OF_LONG + SIZE_OF_INT + SIZE_OF_INT));
+    }
+
+    @TearDown(Level.Trial)
+    public void reset() throws Exception
+    {
+        WsController controller = reaktor.controller(WsController.class);
+
+        controller.unrouteServer("source", sourceInputRef, "target", targetInputRef, null).get();
+
+        this.sourceInputStreams.close();
+        this.sourceInputStreams = null;
+
+        this.sourceOutputEstStreams.close();
+        this.sourceOutputEstStreams = null;
+
+        this.reaktor.close();
+        this.reaktor = null;
+
+        System.clearProperty("nukleus.ws.reassemble.fragments");
+    }
+
+    @Benchmark
+    @Group("throughput")
+    @GroupThreads(1)
+    public void writer(Control control) throws Exception
+    {
+        while (!control.stopMeasurement &&
+               !sourceInputStreams.writeStreams(data.typeId(), data.buffer(), 0, data.limit()))
+        {
+            Thread.yield();
+        }
+
+        while (!control.stopMeasurement &&
+                sourceInputStreams.readThrottle((t, b, o, l) -> {}) == 0)
+        {
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    @Group("throughput")
+    @GroupThreads(1)
+    public void reader(Control control) throws Exception
+    {
+        while (!control.stopMeasurement &&
+               sourceOutputEstStreams.readStreams(this::handleReply) == 0)
+        {
+            Thread.yield();
+        }
+    }
+
+    private void handleReply(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        sourceOutputEstHandler.onMessage(msgTypeId, buffer, index, length);
+    }
+
+    private void processBegin(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        beginRO.wrap(buffer, index, index + length);
+        final long streamId = beginRO.streamId();
+        doWindow(streamId, 64 * 1024);
+
+        this.sourceOutputEstHandler = this::processData;
+    }
+
+    private void processData(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        dataRO.wrap(buffer, index, index + length);
+        doWindow(dataRO.streamId(), dataRO.payload().sizeof());
+    }
+
+    private void doWindow(
+        final long streamId,
+        final int update)
+    {
+        final WindowFW window = windowRW.wrap(throttleBuffer, 0, throttleBuffer.capacity())
+                .streamId(streamId)
+                .update(update)
+                .build();
+
+        sourceOutputEstStreams.writeThrottle(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private Flyweight.Builder.Visitor visitHttpBeginEx(
+        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    {
+        return (buffer, offset, limit) ->
+            httpBeginExRW.wrap(buffer, offset, limit)
+                         .headers(headers)
+                         .build()
+                         .sizeof();
+    }
+
+    private static int encodeMaskedFrame(
+        MutableDirectBuffer buffer,
+        int offset,
+        boolean fin,
+        int opcode,
+        int maskingKey,
+        byte[] payload)
+    {
+        int progress = offset;
+
+        buffer.putByte(progress++, (byte) ((fin ? 0x80 : 0x00) | opcode));
+        buffer.putByte(progress++, (byte) (0x80 | 126));
+        buffer.putShort(progress, (short) payload.length, BIG_ENDIAN);
+        progress += 2;
+        buffer.putInt(progress, maskingKey, BIG_ENDIAN);
+        progress += 4;
+
+        for (int i = 0; i < payload.length; i++)
+        {
+            buffer.putByte(progress++, (byte) (payload[i] ^ (maskingKey >> (24 - 8 * (i & 3)))));
+        }
+
+        return progress - offset;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(WsFragmentationBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+import static org.reaktivity.nukleus.Configuration.STREAMS_BUFFER_CAPACITY_PROPERTY_NAME;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.ws.internal.WsController;
+import org.reaktivity.nukleus.ws.internal.WsStreams;
+import org.reaktivity.nukleus.ws.internal.types.Flyweight;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.WindowFW;
+import org.reaktivity.reaktor.Reaktor;
+
+/**
+ * Measures pings answered with pongs by the nukleus on the reply stream, without reaching the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class WsPingBM
+{
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+
+    private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+
+    private Reaktor reaktor;
+
+    private WsStreams sourceInputStreams;
+    private WsStreams sourceOutputEstStreams;
+    private WsStreams targetInputStreams;
+    private WsStreams targetOutputEstStreams;
+
+    private long sourceInputRef;
+    private long targetInputRef;
+
+    private DataFW data;
+    private MutableDirectBuffer throttleBuffer;
+
+    private long correlationId;
+    private long replyId;
+    private int pongs;
+
+    @Setup(Level.Trial)
+    public void reinit() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, "target/nukleus-benchmarks");
+        properties.setProperty(STREAMS_BUFFER_CAPACITY_PROPERTY_NAME, Long.toString(1024L * 1024L * 16L));
+
+        this.reaktor = Reaktor.builder()
+                              .config(new Configuration(properties))
+                              .nukleus("ws"::equals)
+                              .controller(WsController.class::isAssignableFrom)
+                              .errorHandler(ex -> ex.printStackTrace(System.err))
+                              .build()
+                              .start();
+
+        final Random random = new Random();
+        final WsController controller = reaktor.controller(WsController.class);
+
+        this.targetInputRef = random.nextLong();
+        this.sourceInputRef = controller.routeServer("source", 0L, "target", targetInputRef, null).get();
+
+        this.sourceInputStreams = controller.streams("source");
+        this.sourceOutputEstStreams = controller.streams("source", "target");
+
+        final long sourceInputId = random.nextLong();
+
+        final Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers = hs ->
+        {
+            hs.item(h -> h.name(":scheme").value("http"));
+            hs.item(h -> h.name(":method").value("GET"));
+            hs.item(h -> h.name(":path").value("/"));
+            hs.item(h -> h.name("host").value("localhost:8080"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+        };
+
+        final AtomicBuffer writeBuffer = new UnsafeBuffer(new byte[1024]);
+
+        final BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(sourceInputId)
+                .source("source")
+                .sourceRef(sourceInputRef)
+                .correlationId(random.nextLong())
+                .extension(e -> e.set(visitHttpBeginEx(headers)))
+                .build();
+
+        this.sourceInputStreams.writeStreams(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        // the application accepts the websocket, establishing the reply stream
+        while (sourceOutputEstStreams.readStreams(this::processBegin) == 0)
+        {
+            Thread.yield();
+        }
+
+        this.targetInputStreams = controller.streams("target");
+
+        final BeginFW reply = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(random.nextLong())
+                .source("target")
+                .sourceRef(0L)
+                .correlationId(correlationId)
+                .extension(e -> e.reset())
+                .build();
+
+        this.targetInputStreams.writeStreams(reply.typeId(), reply.buffer(), reply.offset(), reply.sizeof());
+
+        // the reply streams are created by the nukleus on the reply begin
+        while (targetOutputEstStreams == null)
+        {
+            try
+            {
+                this.targetOutputEstStreams = controller.streams("target", "source");
+            }
+            catch (IllegalStateException ex)
+            {
+                Thread.sleep(10L);
+            }
+        }
+
+        while (targetOutputEstStreams.readStreams(this::processBegin) == 0)
+        {
+            Thread.yield();
+        }
+
+        // pongs are charged against the http window, so the client grants it up front
+        this.replyId = beginRO.streamId();
+        this.throttleBuffer = new UnsafeBuffer(new byte[64]);
+        doWindow(1024 * 1024, 1024);
+
+        final MutableDirectBuffer ping = new UnsafeBuffer(new byte[2 + 4 + 16]);
+        ping.putByte(0, (byte) 0x89);
+        ping.putByte(1, (byte) (0x80 | 16));
+        ping.putInt(2, random.nextInt() | 1);
+
+        this.data = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                          .streamId(sourceInputId)
+                          .payload(p -> p.set(ping, 0, ping.capacity()))
+                          .extension(e -> e.reset())
+                          .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void reset() throws Exception
+    {
+        WsController controller = reaktor.controller(WsController.class);
+
+        controller.unrouteServer("source", sourceInputRef, "target", targetInputRef, null).get();
+
+        this.sourceInputStreams.close();
+        this.sourceInputStreams = null;
+
+        this.sourceOutputEstStreams.close();
+        this.sourceOutputEstStreams = null;
+
+        this.targetInputStreams.close();
+        this.targetInputStreams = null;
+
+        this.targetOutputEstStreams.close();
+        this.targetOutputEstStreams = null;
+
+        this.reaktor.close();
+        this.reaktor = null;
+    }
+
+    @Benchmark
+    @Group("throughput")
+    @GroupThreads(1)
+    public void writer(Control control) throws Exception
+    {
+        while (!control.stopMeasurement &&
+               !sourceInputStreams.writeStreams(data.typeId(), data.buffer(), 0, data.limit()))
+        {
+            Thread.yield();
+        }
+
+        while (!control.stopMeasurement &&
+                sourceInputStreams.readThrottle((t, b, o, l) -> {}) == 0)
+        {
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    @Group("throughput")
+    @GroupThreads(1)
+    public int reader(Control control) throws Exception
+    {
+        while (!control.stopMeasurement &&
+               targetOutputEstStreams.readStreams(this::processPong) == 0)
+        {
+            Thread.yield();
+        }
+
+        return pongs;
+    }
+
+    private void processBegin(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        beginRO.wrap(buffer, index, index + length);
+        this.correlationId = beginRO.correlationId();
+    }
+
+    private void processPong(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        dataRO.wrap(buffer, index, index + length);
+        this.pongs += dataRO.payload().sizeof();
+
+        doWindow(dataRO.payload().sizeof(), 1);
+    }
+
+    private void doWindow(
+        int update,
+        int frames)
+    {
+        final WindowFW window = windowRW.wrap(throttleBuffer, 0, throttleBuffer.capacity())
+                .streamId(replyId)
+                .update(update)
+                .frames(frames)
+                .build();
+
+        targetOutputEstStreams.writeThrottle(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private Flyweight.Builder.Visitor visitHttpBeginEx(
+        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    {
+        return (buffer, offset, limit) ->
+            httpBeginExRW.wrap(buffer, offset, limit)
+                         .headers(headers)
+                         .build()
+                         .sizeof();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(WsPingBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.bench;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+import static org.reaktivity.nukleus.Configuration.STREAMS_BUFFER_CAPACITY_PROPERTY_NAME;
+import static org.reaktivity.nukleus.Configuration.THROTTLE_BUFFER_CAPACITY_PROPERTY_NAME;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.ws.internal.WsController;
+import org.reaktivity.nukleus.ws.internal.WsStreams;
+import org.reaktivity.nukleus.ws.internal.types.Flyweight;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.WindowFW;
+import org.reaktivity.reaktor.Reaktor;
+
+/**
+ * Measures messages written by the application on the reply stream, framed by the nukleus within the window of the
+ * http side, fragmenting and holding back any message larger than that window allows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class WsReplyBM
+{
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final WindowFW windowRO = new WindowFW();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+
+    private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+
+    @Param({ "100", "8192" })
+    public int messageSize;
+
+    // the http side grants back what it reads, so a message larger than its window is written as fragments
+    @Param({ "4096", "65536" })
+    public int window;
+
+    private Reaktor reaktor;
+
+    private WsStreams sourceInputStreams;
+    private WsStreams sourceOutputEstStreams;
+    private WsStreams targetInputStreams;
+    private WsStreams targetOutputEstStreams;
+
+    private long sourceInputRef;
+    private long targetInputRef;
+
+    private MutableDirectBuffer dataBuffer;
+    private DataFW data;
+    private MutableDirectBuffer throttleBuffer;
+
+    private long correlationId;
+    private long httpReplyId;
+    private long credit;
+    private long creditFrames;
+    private int frames;
+
+    @Setup(Level.Trial)
+    public void reinit() throws Exception
+    {
+        // the reply streams are looked up by name, so none may remain from a previous trial
+        final File directory = new File("target/nukleus-benchmarks");
+        IoUtil.delete(directory, true);
+
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, directory.getPath());
+        properties.setProperty(STREAMS_BUFFER_CAPACITY_PROPERTY_NAME, Long.toString(1024L * 1024L * 16L));
+        // a window for each message, so windows are not lost while the writer is descheduled
+        properties.setProperty(THROTTLE_BUFFER_CAPACITY_PROPERTY_NAME, Long.toString(1024L * 1024L));
+
+        this.reaktor = Reaktor.builder()
+                              .config(new Configuration(properties))
+                              .nukleus("ws"::equals)
+                              .controller(WsController.class::isAssignableFrom)
+                              .errorHandler(ex -> ex.printStackTrace(System.err))
+                              .build()
+                              .start();
+
+        final Random random = new Random();
+        final WsController controller = reaktor.controller(WsController.class);
+
+        this.targetInputRef = random.nextLong();
+        this.sourceInputRef = controller.routeServer("source", 0L, "target", targetInputRef, null).get();
+
+        this.sourceInputStreams = controller.streams("source");
+        this.sourceOutputEstStreams = controller.streams("source", "target");
+
+        final long sourceInputId = random.nextLong();
+
+        final Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers = hs ->
+        {
+            hs.item(h -> h.name(":scheme").value("http"));
+            hs.item(h -> h.name(":method").value("GET"));
+            hs.item(h -> h.name(":path").value("/"));
+            hs.item(h -> h.name("host").value("localhost:8080"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+        };
+
+        final AtomicBuffer writeBuffer = new UnsafeBuffer(new byte[1024]);
+
+        final BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(sourceInputId)
+                .source("source")
+                .sourceRef(sourceInputRef)
+                .correlationId(random.nextLong())
+                .extension(e -> e.set(visitHttpBeginEx(headers)))
+                .build();
+
+        this.sourceInputStreams.writeStreams(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        // the application accepts the websocket, establishing the reply stream
+        while (sourceOutputEstStreams.readStreams(this::processBegin) == 0)
+        {
+            Thread.yield();
+        }
+
+        this.targetInputStreams = controller.streams("target");
+
+        final long replyId = random.nextLong();
+        final BeginFW reply = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(replyId)
+                .source("target")
+                .sourceRef(0L)
+                .correlationId(correlationId)
+                .extension(e -> e.reset())
+                .build();
+
+        this.targetInputStreams.writeStreams(reply.typeId(), reply.buffer(), reply.offset(), reply.sizeof());
+
+        // the reply streams are created by the nukleus on the reply begin
+        while (targetOutputEstStreams == null)
+        {
+            try
+            {
+                this.targetOutputEstStreams = controller.streams("target", "source");
+            }
+            catch (IllegalStateException ex)
+            {
+                Thread.sleep(10L);
+            }
+        }
+
+        while (targetOutputEstStreams.readStreams(this::processHttpBegin) == 0)
+        {
+            Thread.yield();
+        }
+
+        this.throttleBuffer = new UnsafeBuffer(allocateDirect(SIZE_OF_LONG + SIZE_OF_INT + SIZE_OF_INT));
+        doWindow(httpReplyId, window);
+
+        final byte[] payload = new byte[messageSize];
+        random.nextBytes(payload);
+
+        this.dataBuffer = new UnsafeBuffer(new byte[messageSize + 1024]);
+        this.data = dataRW.wrap(dataBuffer, 0, dataBuffer.capacity())
+                          .streamId(replyId)
+                          .payload(p -> p.set(payload))
+                          .extension(e -> e.reset())
+                          .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void reset() throws Exception
+    {
+        WsController controller = reaktor.controller(WsController.class);
+
+        controller.unrouteServer("source", sourceInputRef, "target", targetInputRef, null).get();
+
+        this.sourceInputStreams.close();
+        this.sourceInputStreams = null;
+
+        this.sourceOutputEstStreams.close();
+        this.sourceOutputEstStreams = null;
+
+        this.targetInputStreams.close();
+        this.targetInputStreams = null;
+
+        this.targetOutputEstStreams.close();
+        this.targetOutputEstStreams = null;
+
+        this.reaktor.close();
+        this.reaktor = null;
+    }
+
+    @Benchmark
+    @Group("throughput")
+    @GroupThreads(1)
+    public void writer(Control control) throws Exception
+    {
+        // as an application writing whenever it has any credit, leaving the nukleus to fit each message to the window
+        targetInputStreams.readThrottle(this::processWindow);
+
+        while (!control.stopMeasurement && (credit <= 0L || creditFrames <= 0L))
+        {
+            if (targetInputStreams.readThrottle(this::processWindow) == 0)
+            {
+                Thread.yield();
+            }
+        }
+
+        if (credit > 0L && creditFrames > 0L)
+        {
+            // windows are still drained while the streams buffer is full, as the nukleus does not retry them
+            while (!control.stopMeasurement &&
+                   !targetInputStreams.writeStreams(data.typeId(), data.buffer(), data.offset(), data.sizeof()))
+            {
+                targetInputStreams.readThrottle(this::processWindow);
+                Thread.yield();
+            }
+
+            this.credit -= messageSize;
+            this.creditFrames--;
+        }
+    }
+
+    @Benchmark
+    @Group("throughput")
+    @GroupThreads(1)
+    public int reader(Control control) throws Exception
+    {
+        while (!control.stopMeasurement &&
+               targetOutputEstStreams.readStreams(this::processFrame) == 0)
+        {
+            Thread.yield();
+        }
+
+        return frames;
+    }
+
+    private void processBegin(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        beginRO.wrap(buffer, index, index + length);
+        this.correlationId = beginRO.correlationId();
+    }
+
+    private void processHttpBegin(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        beginRO.wrap(buffer, index, index + length);
+        this.httpReplyId = beginRO.streamId();
+    }
+
+    private void processWindow(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (msgTypeId == WindowFW.TYPE_ID)
+        {
+            windowRO.wrap(buffer, index, index + length);
+            this.credit += windowRO.update();
+            this.creditFrames += windowRO.frames();
+        }
+    }
+
+    private void processFrame(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (msgTypeId == DataFW.TYPE_ID)
+        {
+            dataRO.wrap(buffer, index, index + length);
+            this.frames++;
+            doWindow(dataRO.streamId(), dataRO.payload().sizeof());
+        }
+    }
+
+    private void doWindow(
+        final long streamId,
+        final int update)
+    {
+        final WindowFW window = windowRW.wrap(throttleBuffer, 0, throttleBuffer.capacity())
+                .streamId(streamId)
+                .update(update)
+                .frames(update)
+                .build();
+
+        while (!targetOutputEstStreams.writeThrottle(window.typeId(), window.buffer(), window.offset(), window.sizeof()))
+        {
+            Thread.yield();
+        }
+    }
+
+    private Flyweight.Builder.Visitor visitHttpBeginEx(
+        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    {
+        return (buffer, offset, limit) ->
+            httpBeginExRW.wrap(buffer, offset, limit)
+                         .headers(headers)
+                         .build()
+                         .sizeof();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(WsReplyBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
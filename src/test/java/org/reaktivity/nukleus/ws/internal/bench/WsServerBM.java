@@ -121,7 +121,7 @@ public class WsServerBM
         this.sourceInputRef = controller.routeServer("source", 0L, "target", targetInputRef, null).get();
 
         this.sourceInputStreams = controller.streams("source");
-        this.sourceOutputEstStreams = controller.streams("ws", "target");
+        this.sourceOutputEstStreams = controller.streams("source", "target");
 
         this.sourceInputId = random.nextLong();
         this.sourceOutputEstHandler = this::processBegin;
@@ -143,6 +143,7 @@ public class WsServerBM
 
         BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
                 .streamId(sourceInputId)
+                .source("source")
                 .sourceRef(sourceInputRef)
                 .correlationId(random.nextLong())
                 .extension(e -> e.set(visitHttpBeginEx(headers)))
@@ -178,7 +179,7 @@ public class WsServerBM
                           .extension(e -> e.reset())
                           .build();
 
-        this.throttleBuffer = new UnsafeBuffer(allocateDirect(SIZE_OF_LONG + SIZE_OF_INT));
+        this.throttleBuffer = new UnsafeBuffer(allocateDirect(SIZE_OF_LONG + SIZE_OF_INT + SIZE_OF_INT));
     }
 
     @TearDown(Level.Trial)
@@ -0,0 +1,348 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.bench;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+import static org.reaktivity.nukleus.Configuration.STREAMS_BUFFER_CAPACITY_PROPERTY_NAME;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.ws.internal.WsController;
+import org.reaktivity.nukleus.ws.internal.WsStreams;
+import org.reaktivity.nukleus.ws.internal.types.Flyweight;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.WindowFW;
+import org.reaktivity.reaktor.Reaktor;
+
+/**
+ * Measures delivery of frames split across two DataFW messages at every possible byte boundary, including within
+ * the header, compared with the same frames each delivered whole in one DataFW message. Each operation delivers
+ * one frame per boundary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class WsSplitFrameBM
+{
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+
+    private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+
+    // with a 2 byte header, and with a 4 byte extended payload length
+    @Param({ "16", "1024" })
+    public int payloadSize;
+
+    @Param({ "false", "true" })
+    public boolean split;
+
+    private Reaktor reaktor;
+
+    private WsStreams sourceInputStreams;
+    private WsStreams sourceOutputEstStreams;
+
+    private MutableDirectBuffer throttleBuffer;
+
+    private long sourceInputRef;
+    private long targetInputRef;
+
+    private MutableDirectBuffer dataBuffer;
+    private int[] dataLimits;
+
+    private MessageHandler sourceOutputEstHandler;
+
+    @Setup(Level.Trial)
+    public void reinit() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, "target/nukleus-benchmarks");
+        properties.setProperty(STREAMS_BUFFER_CAPACITY_PROPERTY_NAME, Long.toString(1024L * 1024L * 16L));
+
+        this.reaktor = Reaktor.builder()
+                              .config(new Configuration(properties))
+                              .nukleus("ws"::equals)
+                              .controller(WsController.class::isAssignableFrom)
+                              .errorHandler(ex -> ex.printStackTrace(System.err))
+                              .build()
+                              .start();
+
+        final Random random = new Random();
+        final WsController controller = reaktor.controller(WsController.class);
+
+        this.targetInputRef = random.nextLong();
+        this.sourceInputRef = controller.routeServer("source", 0L, "target", targetInputRef, null).get();
+
+        this.sourceInputStreams = controller.streams("source");
+        this.sourceOutputEstStreams = controller.streams("source", "target");
+
+        final long sourceInputId = random.nextLong();
+        this.sourceOutputEstHandler = this::processBegin;
+
+        final Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers = hs ->
+        {
+            hs.item(h -> h.name(":scheme").value("http"));
+            hs.item(h -> h.name(":method").value("GET"));
+            hs.item(h -> h.name(":path").value("/"));
+            hs.item(h -> h.name("host").value("localhost:8080"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+        };
+
+        final AtomicBuffer writeBuffer = new UnsafeBuffer(new byte[64 * 1024]);
+
+        BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(sourceInputId)
+                .source("source")
+                .sourceRef(sourceInputRef)
+                .correlationId(random.nextLong())
+                .extension(e -> e.set(visitHttpBeginEx(headers)))
+                .build();
+
+        this.sourceInputStreams.writeStreams(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        final byte[] payload = new byte[payloadSize];
+        random.nextBytes(payload);
+
+        final MutableDirectBuffer frame = new UnsafeBuffer(new byte[payloadSize + 14]);
+        final int frameLength = encodeMaskedFrame(frame, 0, 0x02, random.nextInt() | 1, payload);
+
+        this.dataBuffer = new UnsafeBuffer(new byte[2 * frameLength * (frameLength + 64)]);
+
+        this.dataLimits = new int[split ? 2 * (frameLength - 1) : frameLength - 1];
+
+        int dataLimit = 0;
+        int dataCount = 0;
+        for (int boundary = 1; boundary < frameLength; boundary++)
+        {
+            final int splitAt = split ? boundary : frameLength;
+
+            dataLimit = dataRW.wrap(dataBuffer, dataLimit, dataBuffer.capacity())
+                    .streamId(sourceInputId)
+                    .payload(p -> p.set(frame, 0, splitAt))
+                    .extension(e -> e.reset())
+                    .build()
+                    .limit();
+            dataLimits[dataCount++] = dataLimit;
+
+            if (split)
+            {
+                dataLimit = dataRW.wrap(dataBuffer, dataLimit, dataBuffer.capacity())
+                        .streamId(sourceInputId)
+                        .payload(p -> p.set(frame, splitAt, frameLength - splitAt))
+                        .extension(e -> e.reset())
+                        .build()
+                        .limit();
+                dataLimits[dataCount++] = dataLimit;
+            }
+        }
+
+        this.throttleBuffer = new UnsafeBuffer(allocateDirect(SIZE_OF_LONG + SIZE_OF_INT + SIZE_OF_INT));
+    }
+
+    @TearDown(Level.Trial)
+    public void reset() throws Exception
+    {
+        WsController controller = reaktor.controller(WsController.class);
+
+        controller.unrouteServer("source", sourceInputRef, "target", targetInputRef, null).get();
+
+        this.sourceInputStreams.close();
+        this.sourceInputStreams = null;
+
+        this.sourceOutputEstStreams.close();
+        this.sourceOutputEstStreams = null;
+
+        this.reaktor.close();
+        this.reaktor = null;
+    }
+
+    @Benchmark
+    @Group("throughput")
+    @GroupThreads(1)
+    public void writer(Control control) throws Exception
+    {
+        int dataOffset = 0;
+        for (int i = 0; i < dataLimits.length; i++)
+        {
+            final int dataLimit = dataLimits[i];
+
+            while (!control.stopMeasurement &&
+                   !sourceInputStreams.writeStreams(DataFW.TYPE_ID, dataBuffer, dataOffset, dataLimit - dataOffset))
+            {
+                Thread.yield();
+            }
+
+            dataOffset = dataLimit;
+        }
+
+        while (!control.stopMeasurement &&
+                sourceInputStreams.readThrottle((t, b, o, l) -> {}) == 0)
+        {
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    @Group("throughput")
+    @GroupThreads(1)
+    public void reader(Control control) throws Exception
+    {
+        while (!control.stopMeasurement &&
+               sourceOutputEstStreams.readStreams(this::handleReply) == 0)
+        {
+            Thread.yield();
+        }
+    }
+
+    private void handleReply(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        sourceOutputEstHandler.onMessage(msgTypeId, buffer, index, length);
+    }
+
+    private void processBegin(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        beginRO.wrap(buffer, index, index + length);
+        final long streamId = beginRO.streamId();
+        doWindow(streamId, 1024 * 1024);
+
+        this.sourceOutputEstHandler = this::processData;
+    }
+
+    private void processData(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        dataRO.wrap(buffer, index, index + length);
+        doWindow(dataRO.streamId(), dataRO.payload().sizeof());
+    }
+
+    private void doWindow(
+        final long streamId,
+        final int update)
+    {
+        final WindowFW window = windowRW.wrap(throttleBuffer, 0, throttleBuffer.capacity())
+                .streamId(streamId)
+                .update(update)
+                .build();
+
+        sourceOutputEstStreams.writeThrottle(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private Flyweight.Builder.Visitor visitHttpBeginEx(
+        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    {
+        return (buffer, offset, limit) ->
+            httpBeginExRW.wrap(buffer, offset, limit)
+                         .headers(headers)
+                         .build()
+                         .sizeof();
+    }
+
+    private static int encodeMaskedFrame(
+        MutableDirectBuffer buffer,
+        int offset,
+        int opcode,
+        int maskingKey,
+        byte[] payload)
+    {
+        int progress = offset;
+
+        buffer.putByte(progress++, (byte) (0x80 | opcode));
+        if (payload.length < 126)
+        {
+            buffer.putByte(progress++, (byte) (0x80 | payload.length));
+        }
+        else
+        {
+            buffer.putByte(progress++, (byte) (0x80 | 126));
+            buffer.putShort(progress, (short) payload.length, BIG_ENDIAN);
+            progress += 2;
+        }
+        buffer.putInt(progress, maskingKey, BIG_ENDIAN);
+        progress += 4;
+
+        for (int i = 0; i < payload.length; i++)
+        {
+            buffer.putByte(progress++, (byte) (payload[i] ^ (maskingKey >> (24 - 8 * (i & 3)))));
+        }
+
+        return progress - offset;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(WsSplitFrameBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class RouteDispatchTest
+{
+    private final Route primary = new Route("source", 1L, null, 2L, "primary", null, null, null, null, null);
+    private final Route secondary = new Route("source", 1L, null, 3L, "secondary", null, null, null, null, null);
+    private final Route fallback = new Route("source", 1L, null, 4L, null, null, null, null, null, null);
+
+    @Test
+    public void shouldResolveRouteByProtocol()
+    {
+        RouteDispatch dispatch = new RouteDispatch(asList(primary, secondary, fallback));
+
+        assertSame(primary, resolve(dispatch, "primary"));
+        assertSame(secondary, resolve(dispatch, "secondary"));
+        assertNull(resolve(dispatch, "prim"));
+    }
+
+    @Test
+    public void shouldPreferRouteWithoutProtocolByDefault()
+    {
+        RouteDispatch dispatch = new RouteDispatch(asList(primary, fallback));
+
+        assertSame(fallback, dispatch.defaultRoute());
+        assertSame(fallback, dispatch.fallbackRoute());
+        assertSame(primary, dispatch.replyTo());
+    }
+
+    @Test
+    public void shouldDefaultToFirstRouteWithoutFallback()
+    {
+        RouteDispatch dispatch = new RouteDispatch(asList(secondary, primary));
+
+        assertSame(secondary, dispatch.defaultRoute());
+        assertNull(dispatch.fallbackRoute());
+    }
+
+    @Test
+    public void shouldResolveNothingWhenEmpty()
+    {
+        assertNull(resolve(RouteDispatch.EMPTY, "primary"));
+        assertNull(RouteDispatch.EMPTY.defaultRoute());
+        assertNull(RouteDispatch.EMPTY.replyTo());
+    }
+
+    private static Route resolve(
+        RouteDispatch dispatch,
+        String protocol)
+    {
+        final byte[] bytes = ("  " + protocol).getBytes(UTF_8);
+        return dispatch.resolve(new UnsafeBuffer(bytes), 2, bytes.length - 2);
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.reaktivity.nukleus.ws.internal.layouts.StreamsLayout;
+import org.reaktivity.nukleus.ws.internal.routable.stream.ReplyStream;
+import org.reaktivity.nukleus.ws.internal.routable.stream.Slab;
+import org.reaktivity.nukleus.ws.internal.routable.stream.SourceInputStreamFactory;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+
+public class SourceTest
+{
+    private static final MessageHandler DISCARD = (t, b, i, l) -> { };
+
+    private final StreamsLayout sourceLayout = new StreamsLayout.Builder()
+            .path(Paths.get("target/nukleus-tests/source/streams/source"))
+            .streamsCapacity(8192)
+            .throttleCapacity(8192)
+            .readonly(false)
+            .build();
+
+    private final StreamsLayout targetLayout = new StreamsLayout.Builder()
+            .path(Paths.get("target/nukleus-tests/source/streams/target"))
+            .streamsCapacity(8192)
+            .throttleCapacity(8192)
+            .readonly(false)
+            .build();
+
+    private final Target target = new Target("target", targetLayout, new UnsafeBuffer(new byte[1024]));
+    private final RingBuffer targetStreams = targetLayout.streamsBuffer();
+
+    private final Route route = new Route("source", 1L, target, 2L, null, null, null, null, null, null);
+    private final RouteDispatch dispatch = new RouteDispatch(singletonList(route));
+
+    private final Long2ObjectHashMap<Consumer<ReplyStream>> replies = new Long2ObjectHashMap<>();
+    private final Long2ObjectHashMap<Runnable> handshakes = new Long2ObjectHashMap<>();
+    private final Slab slab = new Slab(8192, 256);
+
+    private final Source source = new Source("source", "source", sourceLayout, new UnsafeBuffer(new byte[1024]),
+            ref -> null, ref -> dispatch, () -> 0L, name -> target, (id, c) -> { }, id -> null, id -> null,
+            new Long2ObjectHashMap<>(), slab, slab, null, replies, handshakes, null, false, Integer.MAX_VALUE);
+
+    private long targetId;
+
+    private final SourceInputStreamFactory factory = new SourceInputStreamFactory(source, ref -> dispatch,
+            () -> ++targetId, (id, c) -> { }, id -> null, slab, null, replies, handshakes, null, false,
+            Integer.MAX_VALUE);
+
+    @After
+    public void close() throws Exception
+    {
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void shouldNotAllocatePerHandshakeBegin()
+    {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        final BeginFW begin = handshakeBegin();
+        final int handshakes = 20_000;
+
+        // each stream is allocated as it arrives, so only its begin is measured
+        final MessageHandler[] warmups = newStreams(handshakes);
+        final MessageHandler[] streams = newStreams(handshakes);
+
+        processBegins(warmups, begin);
+
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = allocations.getThreadAllocatedBytes(threadId);
+
+        processBegins(streams, begin);
+
+        final long allocatedAfter = allocations.getThreadAllocatedBytes(threadId);
+
+        assertEquals(2L * handshakes, targetId);
+
+        // any allocation per handshake would be at least one object header per iteration
+        assertTrue(allocatedAfter - allocatedBefore < handshakes);
+    }
+
+    private MessageHandler[] newStreams(
+        int count)
+    {
+        final MessageHandler[] streams = new MessageHandler[count];
+        for (int i = 0; i < count; i++)
+        {
+            streams[i] = factory.newStream();
+        }
+        return streams;
+    }
+
+    // the application stream is dropped after each begin, so no map grows during the measurement
+    private void processBegins(
+        MessageHandler[] streams,
+        BeginFW begin)
+    {
+        for (MessageHandler stream : streams)
+        {
+            stream.onMessage(BeginFW.TYPE_ID, (MutableDirectBuffer) begin.buffer(), begin.offset(), begin.sizeof());
+
+            target.removeThrottle(targetId);
+            replies.remove(targetId);
+            handshakes.remove(targetId);
+            targetStreams.read(DISCARD);
+        }
+    }
+
+    private static BeginFW handshakeBegin()
+    {
+        final MutableDirectBuffer buffer = new UnsafeBuffer(new byte[1024]);
+        final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+
+        return new BeginFW.Builder().wrap(buffer, 0, buffer.capacity())
+                .streamId(1L)
+                .source("source")
+                .sourceRef(1L)
+                .correlationId(3L)
+                .extension(e -> e.set((b, o, l) -> httpBeginExRW.wrap(b, o, l)
+                                                                .headers(SourceTest::handshakeHeaders)
+                                                                .build()
+                                                                .sizeof()))
+                .build();
+    }
+
+    private static void handshakeHeaders(
+        ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headers)
+    {
+        headers.item(h -> h.name(":scheme").value("http"));
+        headers.item(h -> h.name(":method").value("GET"));
+        headers.item(h -> h.name(":path").value("/"));
+        headers.item(h -> h.name("host").value("localhost:8080"));
+        headers.item(h -> h.name("upgrade").value("websocket"));
+        headers.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+        headers.item(h -> h.name("sec-websocket-version").value("13"));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.ws.internal.util.RingBufferClaim.INSUFFICIENT_CAPACITY;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.UTF8_ACCEPT;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.reaktivity.nukleus.ws.internal.layouts.StreamsLayout;
+import org.reaktivity.nukleus.ws.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.EndFW;
+
+public class TargetTest
+{
+    private final StreamsLayout layout = new StreamsLayout.Builder()
+            .path(Paths.get("target/nukleus-tests/target/streams/ws"))
+            .streamsCapacity(8192)
+            .throttleCapacity(8192)
+            .readonly(false)
+            .build();
+
+    private final Target target = new Target("ws", layout, new UnsafeBuffer(new byte[1024]));
+    private final RingBuffer streamsBuffer = layout.streamsBuffer();
+    private final DirectBuffer payload = new UnsafeBuffer(new byte[512]);
+
+    @After
+    public void close() throws Exception
+    {
+        target.close();
+    }
+
+    @Test
+    public void shouldReportDataNotWrittenWhenFull()
+    {
+        fill();
+
+        assertEquals(INSUFFICIENT_CAPACITY, target.doWsText(1L, 0x81, 0, payload, UTF8_ACCEPT));
+
+        final List<Integer> typeIds = readTypeIds();
+        assertFalse(typeIds.isEmpty());
+        typeIds.forEach(t -> assertEquals(DataFW.TYPE_ID, t.intValue()));
+    }
+
+    @Test
+    public void shouldWriteEndOnceNoLongerFull()
+    {
+        fill();
+
+        target.doWsEnd(1L, 1000);
+        target.doWsEnd(2L, 1001);
+
+        assertFalse(readTypeIds().contains(EndFW.TYPE_ID));
+
+        assertEquals(2, target.process());
+
+        final List<Long> streamIds = new ArrayList<>();
+        final EndFW endRO = new EndFW();
+        while (streamsBuffer.consumerPosition() != streamsBuffer.producerPosition())
+        {
+            streamsBuffer.read((t, b, i, l) -> streamIds.add(endRO.wrap(b, i, i + l).streamId()));
+        }
+
+        assertEquals(2, streamIds.size());
+        assertEquals(1L, streamIds.get(0).longValue());
+        assertEquals(2L, streamIds.get(1).longValue());
+        assertEquals(0, target.process());
+    }
+
+    // the space left by the last frame written is topped up, so not even an END fits
+    private void fill()
+    {
+        while (target.doWsData(1L, 0x82, 0, payload))
+        {
+        }
+
+        while (streamsBuffer.write(DataFW.TYPE_ID, payload, 0, 0))
+        {
+        }
+    }
+
+    @Test
+    public void shouldWriteHttpEndOnceNoLongerFull()
+    {
+        fill();
+
+        target.doWsEnd(1L, 1000);
+        target.doHttpEnd(2L);
+
+        assertFalse(readTypeIds().contains(EndFW.TYPE_ID));
+
+        assertEquals(2, target.process());
+
+        final List<Integer> extensions = new ArrayList<>();
+        final EndFW endRO = new EndFW();
+        while (streamsBuffer.consumerPosition() != streamsBuffer.producerPosition())
+        {
+            streamsBuffer.read((t, b, i, l) -> extensions.add(endRO.wrap(b, i, i + l).extension().sizeof()));
+        }
+
+        assertEquals(2, extensions.size());
+        assertTrue(extensions.get(0) != 0);
+        assertEquals(0, extensions.get(1).intValue());
+    }
+
+    @Test
+    public void shouldRunCapacityWaiterOncePerRegistration()
+    {
+        final int[] runs = new int[1];
+        target.awaitCapacity(() -> runs[0]++);
+
+        target.process();
+        target.process();
+
+        assertEquals(1, runs[0]);
+    }
+
+    private List<Integer> readTypeIds()
+    {
+        final List<Integer> typeIds = new ArrayList<>();
+        // each read stops at the end of the buffer, and may only skip padding
+        while (streamsBuffer.consumerPosition() != streamsBuffer.producerPosition())
+        {
+            streamsBuffer.read((t, b, i, l) -> typeIds.add(t));
+        }
+        return typeIds;
+    }
+}
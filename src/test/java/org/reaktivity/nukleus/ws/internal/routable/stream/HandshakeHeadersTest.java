@@ -0,0 +1,208 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable.stream;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.Consumer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.ws.internal.routable.Route;
+import org.reaktivity.nukleus.ws.internal.routable.RouteDispatch;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+
+public class HandshakeHeadersTest
+{
+    private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+    private final HandshakeHeaders handshake = new HandshakeHeaders();
+
+    private final Route primary = new Route("source", 1L, null, 2L, "primary", null, null, null, null, null);
+    private final Route secondary = new Route("source", 1L, null, 3L, "secondary", null, null, null, null, null);
+    private final RouteDispatch dispatch = new RouteDispatch(asList(primary, secondary));
+
+    @Test
+    public void shouldMatchHandshakeHeaders()
+    {
+        HttpBeginExFW httpBeginEx = httpBeginEx(hs ->
+        {
+            hs.item(h -> h.name(":method").value("GET"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+            hs.item(h -> h.name("sec-websocket-protocol").value("primary, secondary"));
+        });
+
+        handshake.wrap(httpBeginEx.headers());
+
+        assertTrue(handshake.valid());
+        assertEquals("dGhlIHNhbXBsZSBub25jZQ==", asString(handshake.key()));
+        assertTrue(handshake.hasProtocols());
+        assertSame(primary, handshake.negotiate(dispatch));
+        assertEquals("primary", asString(handshake.protocol()));
+    }
+
+    @Test
+    public void shouldNegotiateInClientPreferenceOrder()
+    {
+        HttpBeginExFW httpBeginEx = httpBeginEx(hs ->
+        {
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+            hs.item(h -> h.name("sec-websocket-protocol").value(" ,unknown,\tsecondary , primary"));
+        });
+
+        handshake.wrap(httpBeginEx.headers());
+
+        assertSame(secondary, handshake.negotiate(dispatch));
+        assertEquals("secondary", asString(handshake.protocol()));
+    }
+
+    @Test
+    public void shouldNotNegotiateProtocolPrefix()
+    {
+        HttpBeginExFW httpBeginEx = httpBeginEx(hs ->
+        {
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+            hs.item(h -> h.name("sec-websocket-protocol").value("prim, primary2, secondaryX"));
+        });
+
+        handshake.wrap(httpBeginEx.headers());
+
+        assertTrue(handshake.hasProtocols());
+        assertNull(handshake.negotiate(dispatch));
+    }
+
+    @Test
+    public void shouldNegotiateAcrossRepeatedProtocolHeaders()
+    {
+        HttpBeginExFW httpBeginEx = httpBeginEx(hs ->
+        {
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+            hs.item(h -> h.name("sec-websocket-protocol").value("unknown"));
+            hs.item(h -> h.name("sec-websocket-protocol").value("secondary, primary"));
+        });
+
+        handshake.wrap(httpBeginEx.headers());
+
+        assertSame(secondary, handshake.negotiate(dispatch));
+        assertEquals("secondary", asString(handshake.protocol()));
+    }
+
+    @Test
+    public void shouldRejectUnsupportedVersion()
+    {
+        HttpBeginExFW httpBeginEx = httpBeginEx(hs ->
+        {
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("8"));
+        });
+
+        handshake.wrap(httpBeginEx.headers());
+
+        assertFalse(handshake.valid());
+        assertFalse(handshake.hasProtocols());
+        assertNull(handshake.negotiate(dispatch));
+    }
+
+    @Test
+    public void shouldRejectMissingKey()
+    {
+        HttpBeginExFW httpBeginEx = httpBeginEx(hs ->
+        {
+            hs.item(h -> h.name("sec-websocket-keys").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+        });
+
+        handshake.wrap(httpBeginEx.headers());
+
+        assertFalse(handshake.valid());
+    }
+
+    @Test
+    public void shouldNotAllocatePerHandshake()
+    {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        HttpBeginExFW httpBeginEx = httpBeginEx(hs ->
+        {
+            hs.item(h -> h.name(":scheme").value("http"));
+            hs.item(h -> h.name(":method").value("GET"));
+            hs.item(h -> h.name(":path").value("/"));
+            hs.item(h -> h.name("host").value("localhost:8080"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+            hs.item(h -> h.name("sec-websocket-version").value("13"));
+            hs.item(h -> h.name("sec-websocket-protocol").value("unknown, secondary"));
+        });
+
+        final ListFW<HttpHeaderFW> headers = httpBeginEx.headers();
+        final int handshakes = 100_000;
+
+        for (int i = 0; i < handshakes; i++)
+        {
+            handshake.wrap(headers).negotiate(dispatch);
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = allocations.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < handshakes; i++)
+        {
+            handshake.wrap(headers).negotiate(dispatch);
+        }
+
+        final long allocatedAfter = allocations.getThreadAllocatedBytes(threadId);
+
+        assertTrue(handshake.valid());
+        assertSame(secondary, handshake.negotiate(dispatch));
+
+        // any allocation per handshake would be at least one object header per iteration
+        assertTrue(allocatedAfter - allocatedBefore < handshakes);
+    }
+
+    private HttpBeginExFW httpBeginEx(
+        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    {
+        return httpBeginExRW.wrap(new UnsafeBuffer(new byte[1024]), 0, 1024)
+                            .headers(headers)
+                            .build();
+    }
+
+    private static String asString(
+        DirectBuffer buffer)
+    {
+        return buffer.getStringWithoutLengthUtf8(0, buffer.capacity());
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable.stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.Consumer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+
+public class HandshakeResponseTest
+{
+    private static final DirectBuffer HASH = new UnsafeBuffer("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=".getBytes(UTF_8));
+
+    private final HandshakeResponse response = new HandshakeResponse();
+
+    @Test
+    public void shouldEncodeResponseWithoutProtocol()
+    {
+        assertEncoded(response.wrap(HASH).protocol(null), hs ->
+        {
+            hs.item(h -> h.name(":status").value("101"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("connection").value("upgrade"));
+            hs.item(h -> h.name("sec-websocket-accept").value(HASH, 0, HASH.capacity()));
+        });
+    }
+
+    @Test
+    public void shouldEncodeResponseWithProtocol()
+    {
+        final DirectBuffer protocol = new UnsafeBuffer("xprimaryx".getBytes(UTF_8));
+
+        assertEncoded(response.wrap(HASH).protocol(protocol, 1, 7), hs ->
+        {
+            hs.item(h -> h.name(":status").value("101"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("connection").value("upgrade"));
+            hs.item(h -> h.name("sec-websocket-accept").value(HASH, 0, HASH.capacity()));
+            hs.item(h -> h.name("sec-websocket-protocol").value("primary"));
+        });
+
+        assertEncoded(response.wrap(HASH).protocol("primary"), hs ->
+        {
+            hs.item(h -> h.name(":status").value("101"));
+            hs.item(h -> h.name("upgrade").value("websocket"));
+            hs.item(h -> h.name("connection").value("upgrade"));
+            hs.item(h -> h.name("sec-websocket-accept").value(HASH, 0, HASH.capacity()));
+            hs.item(h -> h.name("sec-websocket-protocol").value("primary"));
+        });
+    }
+
+    private static void assertEncoded(
+        HandshakeResponse response,
+        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    {
+        final MutableDirectBuffer expected = new UnsafeBuffer(new byte[256]);
+        final int expectedLength = new HttpBeginExFW.Builder()
+                .wrap(expected, 0, expected.capacity())
+                .headers(headers)
+                .build()
+                .sizeof();
+
+        final MutableDirectBuffer actual = new UnsafeBuffer(new byte[256]);
+        final int actualLength = response.visit(actual, 0, actual.capacity());
+
+        assertEquals(expectedLength, actualLength);
+        assertEquals(new UnsafeBuffer(expected, 0, expectedLength), new UnsafeBuffer(actual, 0, actualLength));
+    }
+}
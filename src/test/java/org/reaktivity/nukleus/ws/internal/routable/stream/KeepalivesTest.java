@@ -0,0 +1,84 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable.stream;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class KeepalivesTest
+{
+    private final Keepalives keepalives = new Keepalives(1000L, 100L, 10L, 0L);
+    private final List<Long> fired = new ArrayList<>();
+
+    @Test
+    public void shouldFireAfterIdleInterval()
+    {
+        keepalives.start(1L, () -> fired.add(1L));
+
+        assertEquals(0, keepalives.expire(990L));
+        assertEquals(1, keepalives.expire(1000L));
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void shouldRescheduleAfterPongTimeoutFromHandler()
+    {
+        keepalives.start(1L, () ->
+        {
+            fired.add(1L);
+            keepalives.awaitPong(1L);
+        });
+
+        keepalives.expire(1000L);
+        assertEquals(0, keepalives.expire(1090L));
+        assertEquals(1, keepalives.expire(1100L));
+        assertEquals(2, fired.size());
+    }
+
+    @Test
+    public void shouldRescheduleAfterIdleIntervalFromHandler()
+    {
+        keepalives.start(1L, () ->
+        {
+            fired.add(1L);
+            keepalives.awaitIdle(1L);
+        });
+
+        keepalives.expire(1000L);
+        keepalives.expire(1990L);
+        assertEquals(1, fired.size());
+
+        keepalives.expire(2000L);
+        assertEquals(2, fired.size());
+    }
+
+    @Test
+    public void shouldIgnoreStoppedStream()
+    {
+        keepalives.start(1L, () -> fired.add(1L));
+        keepalives.start(2L, () -> fired.add(2L));
+        keepalives.stop(1L);
+
+        keepalives.expire(1000L);
+
+        assertEquals(1, fired.size());
+        assertEquals(2L, fired.get(0).longValue());
+    }
+}
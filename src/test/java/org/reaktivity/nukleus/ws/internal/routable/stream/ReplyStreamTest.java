@@ -0,0 +1,290 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.routable.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.ws.internal.WsController;
+import org.reaktivity.nukleus.ws.internal.WsStreams;
+import org.reaktivity.nukleus.ws.internal.types.Flyweight;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.FrameFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.WindowFW;
+import org.reaktivity.reaktor.Reaktor;
+
+public class ReplyStreamTest
+{
+    private static final String KEEPALIVE_INTERVAL = "nukleus.ws.keepalive.interval";
+    private static final String KEEPALIVE_TIMEOUT = "nukleus.ws.keepalive.timeout";
+
+    private static final long SOURCE_INPUT_ID = 1L;
+    private static final long REPLY_ID = 2L;
+
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+    private final FrameFW frameRO = new FrameFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+
+    private final MutableDirectBuffer writeBuffer = new UnsafeBuffer(new byte[1024]);
+
+    private Reaktor reaktor;
+    private WsController controller;
+    private WsStreams sourceInputStreams;
+    private WsStreams sourceOutputEstStreams;
+    private WsStreams targetInputStreams;
+    private WsStreams targetOutputEstStreams;
+
+    private long correlationId;
+    private long httpReplyId;
+
+    @Before
+    public void start() throws Exception
+    {
+        final File directory = new File("target/nukleus-tests/replies");
+        IoUtil.delete(directory, true);
+
+        System.setProperty(KEEPALIVE_INTERVAL, "1000");
+        System.setProperty(KEEPALIVE_TIMEOUT, "500");
+
+        final Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, directory.getPath());
+
+        this.reaktor = Reaktor.builder()
+                              .config(new Configuration(properties))
+                              .nukleus("ws"::equals)
+                              .controller(WsController.class::isAssignableFrom)
+                              .errorHandler(ex -> ex.printStackTrace(System.err))
+                              .build()
+                              .start();
+
+        this.controller = reaktor.controller(WsController.class);
+        final long sourceRef = controller.routeServer("source", 0L, "target", 1L, null).get();
+
+        this.sourceInputStreams = controller.streams("source");
+        this.sourceOutputEstStreams = controller.streams("source", "target");
+
+        final BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(SOURCE_INPUT_ID)
+                .source("source")
+                .sourceRef(sourceRef)
+                .correlationId(3L)
+                .extension(e -> e.set(visitHttpBeginEx(ReplyStreamTest::handshakeHeaders)))
+                .build();
+
+        sourceInputStreams.writeStreams(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        await(sourceOutputEstStreams::readStreams, BeginFW.TYPE_ID);
+
+        this.targetInputStreams = controller.streams("target");
+
+        final BeginFW reply = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(REPLY_ID)
+                .source("target")
+                .sourceRef(0L)
+                .correlationId(correlationId)
+                .extension(e -> e.reset())
+                .build();
+
+        targetInputStreams.writeStreams(reply.typeId(), reply.buffer(), reply.offset(), reply.sizeof());
+
+        // the reply streams are created by the nukleus on the reply begin
+        while (targetOutputEstStreams == null)
+        {
+            try
+            {
+                this.targetOutputEstStreams = controller.streams("target", "source");
+            }
+            catch (IllegalStateException ex)
+            {
+                Thread.sleep(10L);
+            }
+        }
+
+        this.httpReplyId = await(targetOutputEstStreams::readStreams, BeginFW.TYPE_ID);
+    }
+
+    @After
+    public void stop() throws Exception
+    {
+        System.clearProperty(KEEPALIVE_INTERVAL);
+        System.clearProperty(KEEPALIVE_TIMEOUT);
+
+        sourceInputStreams.close();
+        sourceOutputEstStreams.close();
+        targetInputStreams.close();
+        targetOutputEstStreams.close();
+        reaktor.close();
+    }
+
+    @Test
+    public void shouldQueuePongUntilHttpWindow() throws Exception
+    {
+        final MutableDirectBuffer ping = new UnsafeBuffer(new byte[2 + 4 + 3]);
+        ping.putByte(0, (byte) 0x89);
+        ping.putByte(1, (byte) (0x80 | 3));
+        final byte[] text = "abc".getBytes();
+        for (int i = 0; i < 4; i++)
+        {
+            ping.putByte(2 + i, (byte) (i + 1));
+        }
+        for (int i = 0; i < text.length; i++)
+        {
+            ping.putByte(6 + i, (byte) (text[i] ^ (i + 1)));
+        }
+
+        final DataFW data = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(SOURCE_INPUT_ID)
+                .payload(p -> p.set(ping, 0, ping.capacity()))
+                .extension(e -> e.reset())
+                .build();
+
+        assertTrue(sourceInputStreams.writeStreams(data.typeId(), data.buffer(), data.offset(), data.sizeof()));
+
+        // no http window yet, so the pong awaits it
+        Thread.sleep(200L);
+        assertEquals(0, targetOutputEstStreams.readStreams((t, b, i, l) -> { }));
+
+        doWindow(httpReplyId, 1024, 1);
+
+        final byte[] pong = new byte[5];
+        await(targetOutputEstStreams::readStreams, DataFW.TYPE_ID, (t, b, i, l) ->
+        {
+            dataRO.wrap(b, i, i + l);
+            dataRO.payload().buffer().getBytes(dataRO.payload().offset(), pong);
+        });
+
+        assertEquals((byte) 0x8a, pong[0]);
+        assertEquals(3, pong[1]);
+        assertEquals("abc", new String(pong, 2, 3));
+    }
+
+    @Test
+    public void shouldEndReplyWhenKeepaliveTimesOut() throws Exception
+    {
+        // the client answers no keepalive ping, nor grants the http window to send one
+        assertEquals(httpReplyId, await(targetOutputEstStreams::readStreams, EndFW.TYPE_ID));
+        assertEquals(REPLY_ID, await(targetInputStreams::readThrottle, ResetFW.TYPE_ID));
+        assertEquals(SOURCE_INPUT_ID, await(sourceInputStreams::readThrottle, ResetFW.TYPE_ID));
+    }
+
+    private void doWindow(
+        long streamId,
+        int update,
+        int frames)
+    {
+        final WindowFW window = windowRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(streamId)
+                .update(update)
+                .frames(frames)
+                .build();
+
+        assertTrue(targetOutputEstStreams.writeThrottle(window.typeId(), window.buffer(), window.offset(), window.sizeof()));
+    }
+
+    private long await(
+        ToIntMessageHandlerFunction reader,
+        int msgTypeId) throws InterruptedException
+    {
+        return await(reader, msgTypeId, (t, b, i, l) -> { });
+    }
+
+    // reads until a frame of the given type arrives, returning its stream id
+    private long await(
+        ToIntMessageHandlerFunction reader,
+        int msgTypeId,
+        MessageHandler consumer) throws InterruptedException
+    {
+        final long[] streamId = { -1L };
+        final MessageHandler handler = (t, b, i, l) ->
+        {
+            if (t == msgTypeId && streamId[0] == -1L)
+            {
+                streamId[0] = frameRO.wrap(b, i, i + l).streamId();
+
+                if (t == BeginFW.TYPE_ID)
+                {
+                    this.correlationId = beginRO.wrap(b, i, i + l).correlationId();
+                }
+
+                consumer.onMessage(t, b, i, l);
+            }
+        };
+
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (streamId[0] == -1L && System.currentTimeMillis() < deadline)
+        {
+            if (reader.apply(handler) == 0)
+            {
+                Thread.sleep(10L);
+            }
+        }
+
+        assertTrue(streamId[0] != -1L);
+        return streamId[0];
+    }
+
+    private Flyweight.Builder.Visitor visitHttpBeginEx(
+        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    {
+        return (buffer, offset, limit) ->
+            httpBeginExRW.wrap(buffer, offset, limit)
+                         .headers(headers)
+                         .build()
+                         .sizeof();
+    }
+
+    private static void handshakeHeaders(
+        ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headers)
+    {
+        headers.item(h -> h.name(":scheme").value("http"));
+        headers.item(h -> h.name(":method").value("GET"));
+        headers.item(h -> h.name(":path").value("/"));
+        headers.item(h -> h.name("host").value("localhost:8080"));
+        headers.item(h -> h.name("upgrade").value("websocket"));
+        headers.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+        headers.item(h -> h.name("sec-websocket-version").value("13"));
+    }
+
+    @FunctionalInterface
+    private interface ToIntMessageHandlerFunction
+    {
+        int apply(MessageHandler handler);
+    }
+}
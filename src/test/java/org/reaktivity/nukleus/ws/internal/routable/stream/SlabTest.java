@@ -16,10 +16,17 @@
 package org.reaktivity.nukleus.ws.internal.routable.stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
 import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
 import org.junit.Test;
 
 public class SlabTest
@@ -122,5 +129,140 @@ public class SlabTest
         assertNotEquals(Slab.NO_SLOT, slot);
     }
 
-}
+    @Test
+    public void acquireShouldAllocateEverySlotOnce() throws Exception
+    {
+        Slab slab = new Slab(64 * 1024, 64);
+        BitSet acquired = new BitSet(1024);
+        for (int i = 0; i < 1024; i++)
+        {
+            int slot = slab.acquire(7L);
+            assertTrue(slot >= 0 && slot < 1024);
+            assertFalse(acquired.get(slot));
+            acquired.set(slot);
+        }
+        assertEquals(Slab.NO_SLOT, slab.acquire(7L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectSlotCapacitiesNotAscending()
+    {
+        new Slab(new int[] { 4096, 256 }, new int[] { 4096, 4096 }, null);
+    }
+
+    @Test
+    public void acquireShouldAllocateSmallestClassLargeEnough() throws Exception
+    {
+        Slab slab = new Slab(new int[] { 256, 4096, 65536 }, new int[] { 1024, 8192, 65536 }, null);
+
+        assertEquals(256, slab.capacity(slab.acquire(1L)));
+        assertEquals(4096, slab.capacity(slab.acquire(2L, 257)));
+        assertEquals(65536, slab.capacity(slab.acquire(3L, 4097)));
+        assertEquals(Slab.NO_SLOT, slab.acquire(4L, 65537));
+        assertEquals(256, slab.buffer(slab.acquire(5L)).capacity());
+    }
+
+    @Test
+    public void acquireShouldFallBackToLargerClassWhenFull() throws Exception
+    {
+        Slab slab = new Slab(new int[] { 256, 4096 }, new int[] { 512, 4096 }, null);
+
+        assertEquals(256, slab.capacity(slab.acquire(1L)));
+        assertEquals(256, slab.capacity(slab.acquire(2L)));
+        assertEquals(4096, slab.capacity(slab.acquire(3L)));
+        assertEquals(Slab.NO_SLOT, slab.acquire(4L));
+    }
+
+    @Test
+    public void growShouldMoveDataToLargerClass() throws Exception
+    {
+        Slab slab = new Slab(new int[] { 256, 4096 }, new int[] { 256, 8192 }, null);
+        int slot = slab.acquire(1L);
+        slab.buffer(slot).putLong(248, 0x0123456789abcdefL);
+
+        int newSlot = slab.grow(1L, slot, 256, 300);
+
+        assertEquals(4096, slab.capacity(newSlot));
+        assertEquals(0x0123456789abcdefL, slab.buffer(newSlot).getLong(248));
+        assertEquals(slot, slab.acquire(2L));
+    }
+
+    @Test
+    public void growShouldRetainSlotWhenNoLargerSlotAvailable() throws Exception
+    {
+        Slab slab = new Slab(new int[] { 256, 4096 }, new int[] { 256, 4096 }, null);
+        slab.acquire(1L, 4096);
+        int slot = slab.acquire(2L);
+        slab.buffer(slot).putInt(0, 42);
 
+        assertEquals(Slab.NO_SLOT, slab.grow(2L, slot, 4, 300));
+        assertEquals(42, slab.buffer(slot).getInt(0));
+    }
+
+    @Test
+    public void acquireShouldReuseMostRecentlyReleasedSlot() throws Exception
+    {
+        Slab slab = new Slab(16 * 1024, 1024);
+        int slot1 = slab.acquire(111);
+        int slot2 = slab.acquire(112);
+        slab.acquire(113);
+
+        slab.release(slot1);
+        slab.release(slot2);
+
+        assertEquals(slot2, slab.acquire(114));
+        assertEquals(slot1, slab.acquire(115));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOverflowSlotCapacityNotPowerOfTwo()
+    {
+        new Slab(new int[] { 256 }, new int[] { 256 }, null, new UnsafeBuffer(new byte[1024]), 100, null);
+    }
+
+    @Test
+    public void acquireShouldFallBackToOverflowWhenMemoryFull() throws Exception
+    {
+        MutableDirectBuffer overflow = new UnsafeBuffer(ByteBuffer.allocateDirect(1024));
+        Slab slab = new Slab(new int[] { 256 }, new int[] { 256 }, null, overflow, 512, null);
+        slab.acquire(1L);
+
+        int slot1 = slab.acquire(2L);
+        int slot2 = slab.acquire(3L);
+
+        assertNotEquals(Slab.NO_SLOT, slot1);
+        assertNotEquals(Slab.NO_SLOT, slot2);
+        assertEquals(512, slab.capacity(slot1));
+        assertEquals(Slab.NO_SLOT, slab.acquire(4L));
+
+        slab.buffer(slot2).putInt(508, 42);
+        assertEquals(42, overflow.getInt(1020));
+    }
+
+    @Test
+    public void writeShouldCountBytesSpilledToOverflow() throws Exception
+    {
+        CountersManager counters = new CountersManager(new UnsafeBuffer(new byte[16384]), new UnsafeBuffer(new byte[1024]));
+        AtomicCounter[] acquiredSlots = { counters.newCounter("memory"), counters.newCounter("overflow") };
+        AtomicCounter overflowBytes = counters.newCounter("overflow.bytes");
+        MutableDirectBuffer overflow = new UnsafeBuffer(ByteBuffer.allocateDirect(1024));
+        Slab slab = new Slab(new int[] { 256 }, new int[] { 256 }, acquiredSlots, overflow, 256, overflowBytes);
+        MutableDirectBuffer data = new UnsafeBuffer(new byte[128]);
+
+        int slot1 = slab.acquire(1L);
+        slab.write(slot1, 0, data, 0, 128);
+        int slot2 = slab.acquire(2L);
+        slab.write(slot2, 0, data, 0, 100);
+        int slot3 = slab.grow(1L, slot1, 128, 200);
+        slab.write(slot3, 128, data, 0, 28);
+
+        assertEquals(0L, acquiredSlots[0].get());
+        assertEquals(2L, acquiredSlots[1].get());
+        assertEquals(256L, overflowBytes.get());
+
+        slab.release(slot2);
+        slab.release(slot3);
+
+        assertEquals(0L, acquiredSlots[1].get());
+    }
+}
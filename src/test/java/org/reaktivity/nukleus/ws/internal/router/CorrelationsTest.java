@@ -0,0 +1,111 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.router;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.reaktivity.nukleus.ws.internal.router.RouteKind.OUTPUT_ESTABLISHED;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
+import org.junit.Test;
+
+public class CorrelationsTest
+{
+    private static final DirectBuffer HASH = new UnsafeBuffer("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=".getBytes(US_ASCII));
+
+    private final CountersManager countersManager =
+            new CountersManager(new UnsafeBuffer(new byte[16384]), new UnsafeBuffer(new byte[1024]));
+    private final AtomicCounter active = countersManager.newCounter("active");
+    private final AtomicCounter overflows = countersManager.newCounter("overflows");
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCapacityNotPowerOfTwo()
+    {
+        new Correlations(100, active, overflows);
+    }
+
+    @Test
+    public void shouldPutAndRemoveCorrelation()
+    {
+        Correlations correlations = new Correlations(16, active, overflows);
+        Correlation expected = new Correlation(123L, "source", OUTPUT_ESTABLISHED, HASH, "primary");
+
+        correlations.put(456L, expected);
+
+        assertEquals(expected, correlations.get(456L));
+        assertEquals(1L, active.get());
+        assertEquals(expected, correlations.remove(456L));
+        assertNull(correlations.get(456L));
+        assertNull(correlations.remove(456L));
+        assertEquals(0L, active.get());
+    }
+
+    @Test
+    public void shouldPutCorrelationWithoutProtocol()
+    {
+        Correlations correlations = new Correlations(16, active, overflows);
+        Correlation expected = new Correlation(123L, "source", OUTPUT_ESTABLISHED, HASH, null);
+
+        correlations.put(456L, expected);
+
+        assertEquals(expected, correlations.remove(456L));
+    }
+
+    @Test
+    public void shouldCountOverflowWhenFull()
+    {
+        Correlations correlations = new Correlations(4, active, overflows);
+        Correlation correlation = new Correlation(123L, "source", OUTPUT_ESTABLISHED, HASH, null);
+
+        for (long key = 1L; key <= 5L; key++)
+        {
+            correlations.put(key, correlation);
+        }
+
+        assertEquals(4, correlations.size());
+        assertEquals(4L, active.get());
+        assertEquals(1L, overflows.get());
+        assertNull(correlations.get(5L));
+    }
+
+    @Test
+    public void shouldFindRemainingCorrelationsAfterRemovingColliding()
+    {
+        Correlations correlations = new Correlations(8, active, overflows);
+        Correlation correlation = new Correlation(0L, "source", OUTPUT_ESTABLISHED, HASH, "primary");
+
+        for (long key = 0L; key < 8L; key++)
+        {
+            correlations.put(key * 8L, correlation.set(key, "source", OUTPUT_ESTABLISHED, HASH, "primary"));
+        }
+
+        for (long key = 0L; key < 8L; key += 2L)
+        {
+            assertEquals(key, correlations.remove(key * 8L).id());
+        }
+
+        for (long key = 1L; key < 8L; key += 2L)
+        {
+            assertEquals(key, correlations.get(key * 8L).id());
+        }
+
+        assertEquals(4, correlations.size());
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.router;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.ws.internal.WsController;
+import org.reaktivity.nukleus.ws.internal.WsStreams;
+import org.reaktivity.nukleus.ws.internal.types.Flyweight;
+import org.reaktivity.nukleus.ws.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.ws.internal.types.ListFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.FrameFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.ws.internal.types.stream.WindowFW;
+import org.reaktivity.reaktor.Reaktor;
+
+public class HandshakeExpiryTest
+{
+    private static final String HANDSHAKE_TIMEOUT = "nukleus.ws.handshake.timeout";
+
+    private static final long SOURCE_INPUT_ID = 1L;
+    private static final long REPLY_ID = 2L;
+
+    private final BeginFW beginRO = new BeginFW();
+    private final FrameFW frameRO = new FrameFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+
+    private final MutableDirectBuffer writeBuffer = new UnsafeBuffer(new byte[1024]);
+
+    private Reaktor reaktor;
+    private WsController controller;
+    private WsStreams sourceInputStreams;
+    private WsStreams sourceOutputEstStreams;
+
+    private long targetId;
+    private long correlationId;
+
+    @Before
+    public void start() throws Exception
+    {
+        final File directory = new File("target/nukleus-tests/handshakes");
+        IoUtil.delete(directory, true);
+
+        System.setProperty(HANDSHAKE_TIMEOUT, "500");
+
+        final Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, directory.getPath());
+
+        this.reaktor = Reaktor.builder()
+                              .config(new Configuration(properties))
+                              .nukleus("ws"::equals)
+                              .controller(WsController.class::isAssignableFrom)
+                              .errorHandler(ex -> ex.printStackTrace(System.err))
+                              .build()
+                              .start();
+
+        this.controller = reaktor.controller(WsController.class);
+        final long sourceRef = controller.routeServer("source", 0L, "target", 1L, null).get();
+
+        this.sourceInputStreams = controller.streams("source");
+        this.sourceOutputEstStreams = controller.streams("source", "target");
+
+        final BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(SOURCE_INPUT_ID)
+                .source("source")
+                .sourceRef(sourceRef)
+                .correlationId(3L)
+                .extension(e -> e.set(visitHttpBeginEx(HandshakeExpiryTest::handshakeHeaders)))
+                .build();
+
+        sourceInputStreams.writeStreams(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        await(sourceOutputEstStreams::readStreams, BeginFW.TYPE_ID);
+    }
+
+    @After
+    public void stop() throws Exception
+    {
+        System.clearProperty(HANDSHAKE_TIMEOUT);
+
+        sourceInputStreams.close();
+        sourceOutputEstStreams.close();
+        reaktor.close();
+    }
+
+    @Test
+    public void shouldEndApplicationStreamAndResetSourceWhenExpired() throws Exception
+    {
+        assertEquals(targetId, await(sourceOutputEstStreams::readStreams, EndFW.TYPE_ID));
+        assertEquals(SOURCE_INPUT_ID, await(sourceInputStreams::readThrottle, ResetFW.TYPE_ID));
+    }
+
+    @Test
+    public void shouldReleaseStreamWhenExpired() throws Exception
+    {
+        doWindow(targetId);
+        assertEquals(SOURCE_INPUT_ID, await(sourceInputStreams::readThrottle, WindowFW.TYPE_ID));
+
+        await(sourceInputStreams::readThrottle, ResetFW.TYPE_ID);
+
+        // the throttle is no longer registered, so a window from the application is not forwarded
+        doWindow(targetId);
+        Thread.sleep(200L);
+        assertEquals(0, sourceInputStreams.readThrottle((t, b, i, l) -> { }));
+
+        // nor is the reply awaited, so a late reply from the application is refused
+        final WsStreams targetInputStreams = controller.streams("target");
+        final BeginFW reply = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(REPLY_ID)
+                .source("target")
+                .sourceRef(0L)
+                .correlationId(correlationId)
+                .extension(e -> e.reset())
+                .build();
+        targetInputStreams.writeStreams(reply.typeId(), reply.buffer(), reply.offset(), reply.sizeof());
+
+        assertEquals(REPLY_ID, await(targetInputStreams::readThrottle, ResetFW.TYPE_ID));
+        targetInputStreams.close();
+    }
+
+    @Test
+    public void shouldForgetHandshakeWhenSourceEnds() throws Exception
+    {
+        final EndFW end = endRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(SOURCE_INPUT_ID)
+                .extension(e -> e.reset())
+                .build();
+        sourceInputStreams.writeStreams(end.typeId(), end.buffer(), end.offset(), end.sizeof());
+
+        assertEquals(targetId, await(sourceOutputEstStreams::readStreams, EndFW.TYPE_ID));
+
+        // the correlation is released with the request, so a reply arriving after it is refused
+        final WsStreams targetInputStreams = controller.streams("target");
+        final BeginFW reply = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(REPLY_ID)
+                .source("target")
+                .sourceRef(0L)
+                .correlationId(correlationId)
+                .extension(e -> e.reset())
+                .build();
+        targetInputStreams.writeStreams(reply.typeId(), reply.buffer(), reply.offset(), reply.sizeof());
+
+        assertEquals(REPLY_ID, await(targetInputStreams::readThrottle, ResetFW.TYPE_ID));
+        targetInputStreams.close();
+    }
+
+    private void doWindow(
+        long streamId)
+    {
+        final WindowFW window = windowRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(streamId)
+                .update(1024)
+                .frames(1)
+                .build();
+
+        assertTrue(sourceOutputEstStreams.writeThrottle(window.typeId(), window.buffer(), window.offset(), window.sizeof()));
+    }
+
+    // reads until a frame of the given type arrives, returning its stream id
+    private long await(
+        ToIntMessageHandlerFunction reader,
+        int msgTypeId) throws InterruptedException
+    {
+        final long[] streamId = { -1L };
+        final MessageHandler handler = (t, b, i, l) ->
+        {
+            if (t == msgTypeId && streamId[0] == -1L)
+            {
+                streamId[0] = frameRO.wrap(b, i, i + l).streamId();
+
+                if (t == BeginFW.TYPE_ID)
+                {
+                    beginRO.wrap(b, i, i + l);
+                    this.targetId = beginRO.streamId();
+                    this.correlationId = beginRO.correlationId();
+                }
+            }
+        };
+
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (streamId[0] == -1L && System.currentTimeMillis() < deadline)
+        {
+            if (reader.apply(handler) == 0)
+            {
+                Thread.sleep(10L);
+            }
+        }
+
+        assertTrue(streamId[0] != -1L);
+        return streamId[0];
+    }
+
+    private Flyweight.Builder.Visitor visitHttpBeginEx(
+        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    {
+        return (buffer, offset, limit) ->
+            httpBeginExRW.wrap(buffer, offset, limit)
+                         .headers(headers)
+                         .build()
+                         .sizeof();
+    }
+
+    private static void handshakeHeaders(
+        ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headers)
+    {
+        headers.item(h -> h.name(":scheme").value("http"));
+        headers.item(h -> h.name(":method").value("GET"));
+        headers.item(h -> h.name(":path").value("/"));
+        headers.item(h -> h.name("host").value("localhost:8080"));
+        headers.item(h -> h.name("upgrade").value("websocket"));
+        headers.item(h -> h.name("sec-websocket-key").value("dGhlIHNhbXBsZSBub25jZQ=="));
+        headers.item(h -> h.name("sec-websocket-version").value("13"));
+    }
+
+    @FunctionalInterface
+    private interface ToIntMessageHandlerFunction
+    {
+        int apply(MessageHandler handler);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.types.stream;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class WsFrameFWTest
+{
+    private final MutableDirectBuffer buffer = new UnsafeBuffer(new byte[64]);
+    private final WsFrameFW wsFrameRO = new WsFrameFW();
+
+    @Test
+    public void shouldWrapHeaderWithLongPayloadLength()
+    {
+        final long length = 5L * 1024L * 1024L * 1024L;
+
+        buffer.putByte(0, (byte) 0x82);
+        buffer.putByte(1, (byte) (0x80 | 127));
+        buffer.putLong(2, length, BIG_ENDIAN);
+        buffer.putInt(10, 0x12345678);
+
+        assertTrue(wsFrameRO.canWrapHeader(buffer, 0, 14));
+        assertFalse(wsFrameRO.canWrap(buffer, 0, buffer.capacity()));
+
+        wsFrameRO.wrapHeader(buffer, 0, 14);
+
+        assertEquals(2, wsFrameRO.opcode());
+        assertEquals(14, wsFrameRO.headerLength());
+        assertEquals(length, wsFrameRO.payloadLength());
+        assertEquals(0x12345678, wsFrameRO.maskingKey());
+    }
+
+    @Test
+    public void shouldReportPayloadLengthWithMostSignificantBitAsNegative()
+    {
+        buffer.putByte(0, (byte) 0x82);
+        buffer.putByte(1, (byte) (0x80 | 127));
+        buffer.putLong(2, Long.MIN_VALUE | 1L, BIG_ENDIAN);
+        buffer.putInt(10, 0x12345678);
+
+        wsFrameRO.wrapHeader(buffer, 0, 14);
+
+        assertTrue(wsFrameRO.payloadLength() < 0L);
+    }
+
+    @Test
+    public void shouldReadPayloadLengthBeforeMaskingKey()
+    {
+        buffer.putByte(0, (byte) 0x81);
+        buffer.putByte(1, (byte) (0x80 | 127));
+        buffer.putLong(2, 1L << 40, BIG_ENDIAN);
+
+        assertFalse(WsFrameFW.canReadPayloadLength(buffer, 0, 9));
+        assertTrue(WsFrameFW.canReadPayloadLength(buffer, 0, 10));
+        assertFalse(wsFrameRO.canWrapHeader(buffer, 0, 10));
+
+        assertEquals(1, WsFrameFW.opcode(buffer, 0));
+        assertEquals(1L << 40, WsFrameFW.payloadLength(buffer, 0));
+    }
+
+    @Test
+    public void shouldReportHeaderLengthAsEncodedByBuilder()
+    {
+        final WsFrameFW.Builder wsFrameRW = new WsFrameFW.Builder();
+        final MutableDirectBuffer frame = new UnsafeBuffer(new byte[70000]);
+        final MutableDirectBuffer payload = new UnsafeBuffer(new byte[65536]);
+
+        for (int length : new int[] { 0, 125, 126, 127, 128, 65535, 65536 })
+        {
+            final WsFrameFW built = wsFrameRW.wrap(frame, 0, frame.capacity())
+                                             .payload(payload, 0, length)
+                                             .flagsAndOpcode(0x82)
+                                             .build();
+
+            assertEquals(built.sizeof() - length, WsFrameFW.headerLength(length));
+        }
+    }
+
+    @Test
+    public void shouldNotWrapHeaderUntilMaskingKeyAvailable()
+    {
+        buffer.putByte(0, (byte) 0x82);
+        buffer.putByte(1, (byte) (0x80 | 126));
+        buffer.putShort(2, (short) 300, BIG_ENDIAN);
+
+        assertFalse(wsFrameRO.canWrapHeader(buffer, 0, 1));
+        assertFalse(wsFrameRO.canWrapHeader(buffer, 0, 7));
+        assertTrue(wsFrameRO.canWrapHeader(buffer, 0, 8));
+    }
+}
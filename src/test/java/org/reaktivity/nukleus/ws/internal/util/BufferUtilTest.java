@@ -0,0 +1,156 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.reaktivity.nukleus.ws.internal.util.BufferUtil.maskAt;
+import static org.reaktivity.nukleus.ws.internal.util.BufferUtil.xor;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class BufferUtilTest
+{
+    @Test
+    public void shouldUnmaskSameAsBytewiseOnHeapBuffers()
+    {
+        final Random random = new Random(0L);
+
+        for (int i = 0; i < 10000; i++)
+        {
+            final byte[] payload = new byte[1 + random.nextInt(i < 5000 ? 64 : 4096)];
+            final int offset = random.nextInt(payload.length);
+            final int limit = offset + random.nextInt(payload.length - offset + 1);
+
+            assertUnmasked(new UnsafeBuffer(payload), random, offset, limit);
+        }
+    }
+
+    @Test
+    public void shouldUnmaskSameAsBytewiseOnDirectBuffers()
+    {
+        final Random random = new Random(1L);
+        final MutableDirectBuffer buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(8192));
+
+        for (int i = 0; i < 1000; i++)
+        {
+            final int offset = random.nextInt(64);
+            final int limit = offset + random.nextInt(buffer.capacity() - offset + 1);
+
+            assertUnmasked(buffer, random, offset, limit);
+        }
+    }
+
+    @Test
+    public void shouldCopyAndUnmaskSameAsBytewise()
+    {
+        final Random random = new Random(2L);
+        final MutableDirectBuffer dest = new UnsafeBuffer(new byte[4096 + 16]);
+
+        for (int i = 0; i < 5000; i++)
+        {
+            final byte[] source = new byte[16 + random.nextInt(4096)];
+            random.nextBytes(source);
+
+            final int srcOffset = random.nextInt(16);
+            final int destOffset = random.nextInt(16);
+            final int length = random.nextInt(source.length - srcOffset + 1);
+
+            final int bits = random.nextInt();
+            final byte[] maskKey = ByteBuffer.allocate(4).order(BIG_ENDIAN).putInt(bits).array();
+            final int nativeBits = new UnsafeBuffer(maskKey).getInt(0);
+
+            final byte[] expected = new byte[length];
+            for (int j = 0; j < length; j++)
+            {
+                expected[j] = (byte) (source[srcOffset + j] ^ maskKey[j & 0x03]);
+            }
+
+            assertEquals(length, xor(new UnsafeBuffer(source), srcOffset, dest, destOffset, length, nativeBits));
+
+            final byte[] actual = new byte[length];
+            dest.getBytes(destOffset, actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void shouldUnmaskInChunksSameAsWhole()
+    {
+        final Random random = new Random(3L);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            final byte[] source = new byte[1 + random.nextInt(256)];
+            random.nextBytes(source);
+
+            final int bits = random.nextInt();
+            final byte[] expected = new byte[source.length];
+            xor(new UnsafeBuffer(source), 0, new UnsafeBuffer(expected), 0, source.length, bits);
+
+            final byte[] actual = new byte[source.length];
+            for (int progress = 0, length; progress < source.length; progress += length)
+            {
+                length = 1 + random.nextInt(source.length - progress);
+                xor(new UnsafeBuffer(source), progress, new UnsafeBuffer(actual), progress, length, maskAt(bits, progress));
+            }
+
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void shouldNotUnmaskWithZeroMask()
+    {
+        final byte[] payload = { 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+        assertEquals(payload.length, xor(new UnsafeBuffer(payload), 0, payload.length, 0));
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }, payload);
+    }
+
+    private static void assertUnmasked(
+        MutableDirectBuffer buffer,
+        Random random,
+        int offset,
+        int limit)
+    {
+        final byte[] original = new byte[buffer.capacity()];
+        random.nextBytes(original);
+        buffer.putBytes(0, original);
+
+        final int bits = random.nextInt();
+        final byte[] maskKey = ByteBuffer.allocate(4).order(BIG_ENDIAN).putInt(bits).array();
+        final int nativeBits = new UnsafeBuffer(maskKey).getInt(0);
+
+        final byte[] expected = original.clone();
+        for (int i = offset; i < limit; i++)
+        {
+            expected[i] ^= maskKey[(i - offset) & 0x03];
+        }
+
+        assertEquals(limit - offset, xor(buffer, offset, limit, nativeBits));
+
+        final byte[] actual = new byte[buffer.capacity()];
+        buffer.getBytes(0, actual);
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.reaktivity.nukleus.ws.internal.util.HandshakeHash.HASH_LENGTH;
+import static org.reaktivity.nukleus.ws.internal.util.HandshakeHash.MAXIMUM_KEY_LENGTH;
+
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Random;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class HandshakeHashTest
+{
+    private static final byte[] HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11".getBytes(US_ASCII);
+
+    private final HandshakeHash handshakeHash = new HandshakeHash();
+    private final MutableDirectBuffer hash = new UnsafeBuffer(new byte[HASH_LENGTH]);
+
+    @Test
+    public void shouldEncodeSampleKey()
+    {
+        // RFC 6455, section 1.3
+        final UnsafeBuffer key = new UnsafeBuffer("dGhlIHNhbXBsZSBub25jZQ==".getBytes(US_ASCII));
+
+        final int length = handshakeHash.encode(key, 0, key.capacity(), hash, 0);
+
+        assertEquals(HASH_LENGTH, length);
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", hash.getStringWithoutLengthUtf8(0, length));
+    }
+
+    @Test
+    public void shouldEncodeSameAsMessageDigest() throws Exception
+    {
+        final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        final Random random = new Random(0L);
+        final MutableDirectBuffer key = new UnsafeBuffer(new byte[MAXIMUM_KEY_LENGTH + 1]);
+
+        for (int keyLength = 0; keyLength <= MAXIMUM_KEY_LENGTH; keyLength++)
+        {
+            final byte[] keyBytes = new byte[keyLength];
+            random.nextBytes(keyBytes);
+            key.putBytes(1, keyBytes);
+
+            sha1.reset();
+            sha1.update(keyBytes);
+            final byte[] digest = sha1.digest(HANDSHAKE_GUID);
+            final String expected = new String(Base64.getEncoder().encode(digest), US_ASCII);
+
+            final int length = handshakeHash.encode(key, 1, keyLength, hash, 0);
+
+            assertEquals(expected, hash.getStringWithoutLengthUtf8(0, length));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectKeyTooLong()
+    {
+        final UnsafeBuffer key = new UnsafeBuffer(new byte[MAXIMUM_KEY_LENGTH + 1]);
+
+        handshakeHash.encode(key, 0, key.capacity(), hash, 0);
+    }
+}
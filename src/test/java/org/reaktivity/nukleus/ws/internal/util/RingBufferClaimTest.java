@@ -0,0 +1,210 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.TRAILER_LENGTH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.reaktivity.nukleus.ws.internal.util.RingBufferClaim.INSUFFICIENT_CAPACITY;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.OneToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.junit.Test;
+
+public class RingBufferClaimTest
+{
+    private static final int CAPACITY = 1024;
+
+    private final RingBuffer ringBuffer = new OneToOneRingBuffer(new UnsafeBuffer(new byte[CAPACITY + TRAILER_LENGTH]));
+    private final RingBufferClaim claim = new RingBufferClaim(ringBuffer);
+
+    @Test
+    public void shouldCommitOnlyEncodedLength()
+    {
+        final int index = claim.claim(100);
+        claim.buffer().putLong(index, 42L);
+        claim.commit(7, 8);
+
+        final List<Long> values = new ArrayList<>();
+        final int count = ringBuffer.read((t, b, i, l) ->
+        {
+            assertEquals(7, t);
+            assertEquals(8, l);
+            values.add(b.getLong(i));
+        });
+
+        assertEquals(1, count);
+        assertEquals(42L, values.get(0).longValue());
+        assertEquals(16L, ringBuffer.producerPosition());
+    }
+
+    @Test
+    public void shouldInterleaveWithWrite()
+    {
+        final UnsafeBuffer message = new UnsafeBuffer(new byte[24]);
+        final List<Long> values = new ArrayList<>();
+
+        for (long value = 0L; value < 1000L; value++)
+        {
+            if ((value & 1L) == 0L)
+            {
+                final int index = claim.claim(ringBuffer.maxMsgLength());
+                assertNotEquals(INSUFFICIENT_CAPACITY, index);
+                claim.buffer().putLong(index, value);
+                claim.commit(1, 8 + (int) (value % 17));
+            }
+            else
+            {
+                message.putLong(0, value);
+                ringBuffer.write(1, message, 0, message.capacity());
+            }
+
+            ringBuffer.read((t, b, i, l) -> values.add(b.getLong(i)));
+        }
+
+        assertEquals(1000, values.size());
+        for (int i = 0; i < values.size(); i++)
+        {
+            assertEquals(i, values.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void shouldRejectClaimWhenFull()
+    {
+        for (int i = 0; i < CAPACITY / 128 - 1; i++)
+        {
+            final int index = claim.claim(120);
+            assertNotEquals(INSUFFICIENT_CAPACITY, index);
+            claim.commit(1, 120);
+        }
+
+        // the header zeroed after each record must also fit
+        assertEquals(INSUFFICIENT_CAPACITY, claim.claim(120));
+        assertNotEquals(INSUFFICIENT_CAPACITY, claim.claim(112));
+        claim.commit(1, 112);
+
+        assertEquals(INSUFFICIENT_CAPACITY, claim.claim(8));
+    }
+
+    @Test
+    public void shouldPreserveUnreadRecordsWhenFullAfterWrap()
+    {
+        long value = 0L;
+        for (int i = 0; i < CAPACITY / 128 - 1; i++)
+        {
+            final int index = claim.claim(120);
+            claim.buffer().putLong(index, value++);
+            claim.commit(1, 120);
+        }
+
+        assertEquals(2, ringBuffer.read((t, b, i, l) -> {}, 2));
+
+        // wraps around, then fills the ring as far as the unread records allow
+        for (int length : new int[] { 120, 112, 8 })
+        {
+            int index;
+            while ((index = claim.claim(length)) != INSUFFICIENT_CAPACITY)
+            {
+                claim.buffer().putLong(index, value++);
+                claim.commit(1, length);
+            }
+        }
+
+        // each read stops at the end of the buffer
+        final List<Long> values = new ArrayList<>();
+        while (ringBuffer.read((t, b, i, l) -> values.add(b.getLong(i))) != 0)
+        {
+        }
+
+        assertEquals(value - 2L, values.size());
+        for (int i = 0; i < values.size(); i++)
+        {
+            assertEquals(i + 2L, values.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void shouldReuseSpaceAfterAbort()
+    {
+        claim.claim(100);
+        claim.abort();
+
+        assertEquals(0, ringBuffer.read((t, b, i, l) -> {}));
+        assertEquals(0L, ringBuffer.producerPosition());
+
+        final int index = claim.claim(8);
+        claim.buffer().putLong(index, 42L);
+        claim.commit(1, 8);
+
+        final List<Long> values = new ArrayList<>();
+        ringBuffer.read((t, b, i, l) -> values.add(b.getLong(i)));
+
+        assertEquals(1, values.size());
+        assertEquals(42L, values.get(0).longValue());
+    }
+
+    @Test
+    public void shouldSkipPaddingAfterAbort()
+    {
+        for (int i = 0; i < CAPACITY / 128 - 1; i++)
+        {
+            claim.claim(120);
+            claim.commit(1, 120);
+        }
+        claim.claim(56);
+        claim.commit(1, 56);
+        ringBuffer.read((t, b, i, l) -> {});
+
+        // requires padding to wrap around, which the consumer may already have read
+        claim.claim(120);
+        claim.abort();
+        ringBuffer.read((t, b, i, l) -> {});
+
+        final List<Long> values = new ArrayList<>();
+        for (long value = 0L; value < 100L; value++)
+        {
+            final int index = claim.claim(8);
+            assertNotEquals(INSUFFICIENT_CAPACITY, index);
+            claim.buffer().putLong(index, value);
+            claim.commit(1, 8);
+
+            ringBuffer.read((t, b, i, l) -> values.add(b.getLong(i)));
+        }
+
+        assertEquals(100, values.size());
+        for (int i = 0; i < values.size(); i++)
+        {
+            assertEquals(i, values.get(i).longValue());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectAbortWithoutClaim()
+    {
+        claim.abort();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectCommitWithoutClaim()
+    {
+        claim.commit(1, 8);
+    }
+}
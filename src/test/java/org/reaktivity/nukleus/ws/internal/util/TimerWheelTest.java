@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.agrona.collections.Long2LongHashMap;
+import org.junit.Test;
+
+public class TimerWheelTest
+{
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveResolution()
+    {
+        new TimerWheel(0L, 0L);
+    }
+
+    @Test
+    public void shouldExpireTimerAtDeadline()
+    {
+        TimerWheel wheel = new TimerWheel(10L, 1000L);
+        Long2LongHashMap expired = new Long2LongHashMap(-1L);
+
+        wheel.schedule(1100L, 7L);
+
+        assertEquals(0, wheel.expire(1090L, id -> expired.put(id, 1090L)));
+        assertEquals(1, wheel.expire(1100L, id -> expired.put(id, 1100L)));
+        assertEquals(1100L, expired.get(7L));
+        assertEquals(0, wheel.expire(2000L, id -> expired.put(id, 2000L)));
+    }
+
+    @Test
+    public void shouldExpireTimerScheduledInThePastOnNextTick()
+    {
+        TimerWheel wheel = new TimerWheel(1L, 1000L);
+        Long2LongHashMap expired = new Long2LongHashMap(-1L);
+
+        wheel.schedule(500L, 7L);
+
+        assertEquals(1, wheel.expire(1001L, id -> expired.put(id, 1001L)));
+    }
+
+    @Test
+    public void shouldCascadeTimersAcrossLevels()
+    {
+        final long start = 12345L;
+        TimerWheel wheel = new TimerWheel(1L, start);
+        Long2LongHashMap deadlines = new Long2LongHashMap(-1L);
+        Long2LongHashMap expired = new Long2LongHashMap(-1L);
+        Random random = new Random(0L);
+
+        for (long id = 0L; id < 10_000L; id++)
+        {
+            final long deadline = start + 1L + random.nextInt(1 << 20);
+            deadlines.put(id, deadline);
+            wheel.schedule(deadline, id);
+        }
+
+        final long[] now = new long[1];
+        for (now[0] = start; expired.size() < deadlines.size(); now[0] += 1 + random.nextInt(100))
+        {
+            wheel.expire(now[0], id -> expired.put(id, now[0]));
+        }
+
+        for (long id = 0L; id < 10_000L; id++)
+        {
+            final long deadline = deadlines.get(id);
+            final long expiredAt = expired.get(id);
+            assertTrue(expiredAt >= deadline);
+            assertTrue(expiredAt - deadline <= 100L);
+        }
+    }
+}
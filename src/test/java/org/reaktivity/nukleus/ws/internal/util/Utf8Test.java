@@ -0,0 +1,175 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.ws.internal.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.copyOfRange;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.UTF8_ACCEPT;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.UTF8_REJECT;
+import static org.reaktivity.nukleus.ws.internal.util.Utf8.xorAndValidate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Random;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class Utf8Test
+{
+    @Test
+    public void shouldAcceptAsciiAndMultilingual()
+    {
+        final String multilingual = "\u03ba\u1f79\u03c3\u03bc\u03b5 \u30cf\u30ed\u30fc \ud83d\ude42 Gr\u00fc\u00dfe, ascii again";
+
+        assertEquals(UTF8_ACCEPT, validate("plain ascii text, long enough for several words".getBytes(UTF_8)));
+        assertEquals(UTF8_ACCEPT, validate(multilingual.getBytes(UTF_8)));
+        assertEquals(UTF8_ACCEPT, validate(bytes(0xef, 0xbf, 0xbf, 0xf4, 0x8f, 0xbf, 0xbf)));
+    }
+
+    @Test
+    public void shouldRejectInvalidSequences()
+    {
+        assertEquals(UTF8_REJECT, validate(bytes(0xc0, 0x80)));
+        assertEquals(UTF8_REJECT, validate(bytes(0xe0, 0x80, 0x80)));
+        assertEquals(UTF8_REJECT, validate(bytes(0xed, 0xa0, 0x80)));
+        assertEquals(UTF8_REJECT, validate(bytes(0xf0, 0x80, 0x80, 0x80)));
+        assertEquals(UTF8_REJECT, validate(bytes(0xf4, 0x90, 0x80, 0x80)));
+        assertEquals(UTF8_REJECT, validate(bytes(0xf5, 0x80, 0x80, 0x80)));
+        assertEquals(UTF8_REJECT, validate(bytes(0x80)));
+        assertEquals(UTF8_REJECT, validate(bytes('a', 'b', 'c', 'd', 'e', 'f', 'g', 0xc3, 0x28)));
+    }
+
+    @Test
+    public void shouldReportIncompleteSequence()
+    {
+        final int state = validate(bytes('a', 0xe2, 0x82));
+
+        assertNotEquals(UTF8_ACCEPT, state);
+        assertNotEquals(UTF8_REJECT, state);
+    }
+
+    @Test
+    public void shouldValidateSameAsDecoderAcrossSplits()
+    {
+        final Random random = new Random(0L);
+        final String[] samples = { "ascii", "\u00e9", "\u30cf", "\ud83d\ude42" };
+        final byte[] invalid = bytes(0xc0, 0xed, 0xf8, 0x80, 0xbf);
+
+        for (int i = 0; i < 10000; i++)
+        {
+            final StringBuilder text = new StringBuilder();
+            final int count = random.nextInt(40);
+            for (int j = 0; j < count; j++)
+            {
+                text.append(samples[random.nextInt(samples.length)]);
+            }
+
+            final byte[] payload = text.toString().getBytes(UTF_8);
+            if (payload.length != 0 && random.nextInt(4) == 0)
+            {
+                payload[random.nextInt(payload.length)] = invalid[random.nextInt(invalid.length)];
+            }
+
+            final int maskKey = random.nextInt();
+            final byte[] masked = mask(payload, maskKey);
+            final byte[] unmasked = new byte[payload.length];
+            final MutableDirectBuffer dest = new UnsafeBuffer(unmasked);
+
+            final int split = random.nextInt(payload.length + 1);
+            int state = xorAndValidate(new UnsafeBuffer(masked), 0, dest, 0, split, maskKey, UTF8_ACCEPT);
+            if (state != UTF8_REJECT)
+            {
+                // the mask phase restarts with each frame, so mask the remainder as a separate frame
+                final byte[] remainder = mask(copyOfRange(payload, split, payload.length), maskKey);
+                state = xorAndValidate(new UnsafeBuffer(remainder), 0, dest, split, remainder.length, maskKey, state);
+            }
+
+            if (decodes(payload))
+            {
+                assertEquals(UTF8_ACCEPT, state);
+                assertArrayEquals(payload, unmasked);
+            }
+            else
+            {
+                assertNotEquals(UTF8_ACCEPT, state);
+            }
+        }
+    }
+
+    private static int validate(
+        byte[] payload)
+    {
+        final int maskKey = 0x12345678;
+        final byte[] unmasked = new byte[payload.length];
+
+        final int state = xorAndValidate(new UnsafeBuffer(mask(payload, maskKey)), 0, new UnsafeBuffer(unmasked), 0,
+                payload.length, maskKey, UTF8_ACCEPT);
+
+        if (state != UTF8_REJECT)
+        {
+            assertArrayEquals(payload, unmasked);
+        }
+
+        return state;
+    }
+
+    // masks as BufferUtil expects, with the key read in native byte order from the frame
+    private static byte[] mask(
+        byte[] payload,
+        int maskKey)
+    {
+        final byte[] key = new byte[4];
+        new UnsafeBuffer(key).putInt(0, maskKey);
+
+        final byte[] masked = new byte[payload.length];
+        for (int i = 0; i < payload.length; i++)
+        {
+            masked[i] = (byte) (payload[i] ^ key[i & 3]);
+        }
+
+        return masked;
+    }
+
+    private static boolean decodes(
+        byte[] payload)
+    {
+        try
+        {
+            UTF_8.newDecoder().decode(ByteBuffer.wrap(payload));
+            return true;
+        }
+        catch (CharacterCodingException ex)
+        {
+            return false;
+        }
+    }
+
+    private static byte[] bytes(
+        int... values)
+    {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}